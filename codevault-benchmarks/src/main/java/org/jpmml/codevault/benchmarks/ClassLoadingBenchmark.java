@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault.benchmarks;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jpmml.codevault.DecryptingURLClassLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * Loads all classes of a generated JAR file into a fresh class loader.
+ * </p>
+ *
+ * Every operation loads the full set of classes.
+ */
+@BenchmarkMode ({
+	Mode.Throughput, Mode.SampleTime
+})
+@OutputTimeUnit (
+	value = TimeUnit.MILLISECONDS
+)
+@Warmup (
+	iterations = 5
+)
+@Measurement (
+	iterations = 10
+)
+@Fork (
+	value = 1
+)
+@State (
+	value = Scope.Benchmark
+)
+public class ClassLoadingBenchmark {
+
+	@Param ({
+		"PLAIN", "DECRYPTING"
+	})
+	public LoaderType loaderType;
+
+	@Param ({
+		"ARCHIVE", "CLASS"
+	})
+	public VaultFixture.Scope scope;
+
+	@Param ({
+		"1000"
+	})
+	public int classCount;
+
+	@Param ({
+		"1", "8"
+	})
+	public int threads;
+
+	private VaultFixture fixture = null;
+
+	private ExecutorService executorService = null;
+
+
+	@Setup (
+		value = Level.Trial
+	)
+	public void setUp() throws Exception {
+		this.fixture = VaultFixture.create(this.classCount, this.scope);
+
+		if(this.threads > 1){
+			this.executorService = Executors.newFixedThreadPool(this.threads);
+		}
+	}
+
+	@TearDown (
+		value = Level.Trial
+	)
+	public void tearDown(){
+
+		if(this.executorService != null){
+			this.executorService.shutdownNow();
+		}
+
+		this.fixture.delete();
+	}
+
+	@Benchmark
+	public void loadClasses(Blackhole blackhole) throws Exception {
+		List<String> classNames = this.fixture.getClassNames();
+
+		try(URLClassLoader classLoader = createClassLoader()){
+
+			if(this.executorService == null){
+				loadClasses(classLoader, classNames, 0, blackhole);
+
+				return;
+			}
+
+			List<Future<?>> futures = new ArrayList<>(this.threads);
+
+			// All threads load all classes, starting from different offsets
+			for(int i = 0; i < this.threads; i++){
+				int offset = (i * classNames.size()) / this.threads;
+
+				futures.add(this.executorService.submit(() -> {
+					loadClasses(classLoader, classNames, offset, blackhole);
+
+					return null;
+				}));
+			}
+
+			for(Future<?> future : futures){
+				future.get();
+			}
+		}
+	}
+
+	private URLClassLoader createClassLoader() throws Exception {
+
+		switch(this.loaderType){
+			case PLAIN:
+				return new URLClassLoader(this.fixture.getPlainURLs());
+			case DECRYPTING:
+				return new DecryptingURLClassLoader(this.fixture.getEncryptedURLs(), this.fixture.getKeyRegistry());
+			default:
+				throw new IllegalArgumentException();
+		}
+	}
+
+	static
+	private void loadClasses(ClassLoader classLoader, List<String> classNames, int offset, Blackhole blackhole) throws ClassNotFoundException {
+
+		for(int i = 0; i < classNames.size(); i++){
+			String className = classNames.get((offset + i) % classNames.size());
+
+			blackhole.consume(classLoader.loadClass(className));
+		}
+	}
+
+	static
+	public enum LoaderType {
+		PLAIN,
+		DECRYPTING,
+		;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault.benchmarks;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.jpmml.codevault.CodeVaultUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode (
+	value = Mode.Throughput
+)
+@OutputTimeUnit (
+	value = TimeUnit.SECONDS
+)
+@Warmup (
+	iterations = 5
+)
+@Measurement (
+	iterations = 10
+)
+@Fork (
+	value = 1
+)
+@State (
+	value = Scope.Thread
+)
+public class CodeVaultUtilBenchmark {
+
+	@Param ({
+		"AES", "Blowfish", "DESede"
+	})
+	public String algorithm;
+
+	@Param ({
+		"1024", "16384", "262144"
+	})
+	public int size;
+
+	private SecretKey secretKey = null;
+
+	private byte[] content = null;
+
+	private byte[] encryptedContent = null;
+
+	private ByteBuffer buffer = null;
+
+
+	@Setup (
+		value = Level.Trial
+	)
+	public void setUp() throws Exception {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance(this.algorithm);
+
+		this.secretKey = keyGenerator.generateKey();
+
+		this.content = VaultFixture.randomContent(this.size);
+		this.encryptedContent = CodeVaultUtil.encrypt(this.secretKey, this.content);
+
+		this.buffer = ByteBuffer.allocate(this.encryptedContent.length);
+	}
+
+	@Benchmark
+	public byte[] encrypt() throws Exception {
+		return CodeVaultUtil.encrypt(this.secretKey, this.content);
+	}
+
+	@Benchmark
+	public byte[] decrypt() throws Exception {
+		return CodeVaultUtil.decrypt(this.secretKey, this.encryptedContent);
+	}
+
+	@Benchmark
+	public ByteBuffer decryptInPlace() throws Exception {
+		ByteBuffer buffer = this.buffer;
+
+		((Buffer)buffer).clear();
+		buffer.put(this.encryptedContent);
+		((Buffer)buffer).flip();
+
+		return CodeVaultUtil.decrypt(this.secretKey, buffer);
+	}
+}
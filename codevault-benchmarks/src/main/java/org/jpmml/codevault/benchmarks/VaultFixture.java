@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import com.sun.codemodel.CodeWriter;
+import com.sun.codemodel.JBlock;
+import com.sun.codemodel.JCodeModel;
+import com.sun.codemodel.JDefinedClass;
+import com.sun.codemodel.JExpr;
+import com.sun.codemodel.JMethod;
+import com.sun.codemodel.JMod;
+import com.sun.codemodel.JPackage;
+import com.sun.codemodel.JVar;
+import org.jpmml.codemodel.ArchiverUtil;
+import org.jpmml.codemodel.CompilerUtil;
+import org.jpmml.codemodel.JarCodeWriter;
+import org.jpmml.codevault.AttributeNames;
+import org.jpmml.codevault.CodeVaultUtil;
+import org.jpmml.codevault.KeyRegistry;
+
+/**
+ * <p>
+ * A pair of plain and encrypted JAR files that contain the same generated classes.
+ * </p>
+ */
+public class VaultFixture {
+
+	private File plainFile = null;
+
+	private File encryptedFile = null;
+
+	private List<String> classNames = null;
+
+	private KeyRegistry keyRegistry = null;
+
+
+	private VaultFixture(File plainFile, File encryptedFile, List<String> classNames, KeyRegistry keyRegistry){
+		this.plainFile = plainFile;
+		this.encryptedFile = encryptedFile;
+		this.classNames = Collections.unmodifiableList(classNames);
+		this.keyRegistry = keyRegistry;
+	}
+
+	public URL[] getPlainURLs() throws IOException {
+		return new URL[]{(this.plainFile.toURI()).toURL()};
+	}
+
+	public URL[] getEncryptedURLs() throws IOException {
+		return new URL[]{(this.encryptedFile.toURI()).toURL()};
+	}
+
+	public List<String> getClassNames(){
+		return this.classNames;
+	}
+
+	public KeyRegistry getKeyRegistry(){
+		return this.keyRegistry;
+	}
+
+	public void delete(){
+		this.plainFile.delete();
+		this.encryptedFile.delete();
+	}
+
+	static
+	public VaultFixture create(int classCount, Scope scope) throws Exception {
+		JCodeModel codeModel = new JCodeModel();
+
+		List<String> classNames = new ArrayList<>(classCount);
+
+		for(int i = 0; i < classCount; i++){
+			JPackage _package = codeModel._package("p" + (i % 16));
+
+			JDefinedClass definedClass = _package._class("C" + i);
+
+			JMethod method = definedClass.method(JMod.PUBLIC, int.class, "compute");
+
+			JVar param = method.param(int.class, "value");
+
+			JBlock block = method.body();
+
+			block._return(param.mul(JExpr.lit(i)).plus(JExpr.lit(classCount)));
+
+			classNames.add(definedClass.fullName());
+		}
+
+		CompilerUtil.compile(codeModel);
+
+		File plainFile = File.createTempFile("codevault-plain", ".jar");
+
+		try(OutputStream os = new FileOutputStream(plainFile)){
+			CodeWriter codeWriter = new JarCodeWriter(os, ArchiverUtil.createManifest());
+
+			codeModel.build(codeWriter);
+		}
+
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		String secretKeyId = "benchmark";
+
+		Attributes attributes = new Attributes();
+		attributes.put(AttributeNames.CODEVAULT_ALGORITHM, secretKey.getAlgorithm());
+		attributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, secretKeyId);
+
+		Manifest manifest = new Manifest();
+
+		Attributes mainAttributes = manifest.getMainAttributes();
+		mainAttributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+		switch(scope){
+			case ARCHIVE:
+				mainAttributes.putAll(attributes);
+				break;
+			case CLASS:
+				break;
+		}
+
+		File encryptedFile = File.createTempFile("codevault-encrypted", ".jar");
+
+		try(JarFile jarFile = new JarFile(plainFile); JarOutputStream jarOs = new JarOutputStream(new FileOutputStream(encryptedFile))){
+
+			for(Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements(); ){
+				JarEntry jarEntry = entries.nextElement();
+
+				String name = jarEntry.getName();
+
+				if(jarEntry.isDirectory() || !name.endsWith(".class")){
+					continue;
+				}
+
+				byte[] content;
+
+				try(InputStream is = jarFile.getInputStream(jarEntry)){
+					content = readFully(is);
+				}
+
+				content = CodeVaultUtil.encrypt(secretKey, content);
+
+				jarOs.putNextEntry(new JarEntry(name));
+				jarOs.write(content);
+				jarOs.closeEntry();
+
+				switch(scope){
+					case ARCHIVE:
+						break;
+					case CLASS:
+						(manifest.getEntries()).put(name, new Attributes(attributes));
+						break;
+				}
+			}
+
+			jarOs.putNextEntry(new JarEntry("META-INF/CODEVAULT.MF"));
+			manifest.write(jarOs);
+			jarOs.closeEntry();
+		}
+
+		KeyRegistry keyRegistry = new KeyRegistry();
+		keyRegistry.putEncodedKey(secretKeyId, secretKey.getEncoded());
+
+		// Loaded the same way as in a deployment, so that the ownership of protected classes is complete
+		try(URLClassLoader classLoader = new URLClassLoader(new URL[]{(encryptedFile.toURI()).toURL()}, null)){
+			keyRegistry.load(classLoader);
+		}
+
+		return new VaultFixture(plainFile, encryptedFile, classNames, keyRegistry);
+	}
+
+	static
+	public byte[] randomContent(int size){
+		byte[] result = new byte[size];
+
+		Random random = new Random(size);
+		random.nextBytes(result);
+
+		return result;
+	}
+
+	static
+	private byte[] readFully(InputStream is) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+		byte[] buffer = new byte[1024];
+
+		while(true){
+			int count = is.read(buffer);
+			if(count < 0){
+				break;
+			}
+
+			os.write(buffer, 0, count);
+		}
+
+		return os.toByteArray();
+	}
+
+	static
+	public enum Scope {
+		ARCHIVE,
+		CLASS,
+		;
+	}
+}
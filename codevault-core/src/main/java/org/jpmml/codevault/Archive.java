@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * <p>
+ * A class path element that provides direct access to its entries.
+ * </p>
+ */
+abstract
+class Archive implements Closeable {
+
+	private URL url = null;
+
+
+	Archive(URL url){
+		this.url = url;
+	}
+
+	/**
+	 * @return <code>true</code> if this archive contains the file entry, <code>false</code> otherwise.
+	 */
+	abstract
+	public boolean contains(String name) throws IOException;
+
+	/**
+	 * @return The content of the entry, or <code>null</code> if this archive does not contain it.
+	 */
+	abstract
+	public ByteBuffer read(String name) throws IOException;
+
+	/**
+	 * <p>
+	 * Maps the entry into memory if possible, or reads it otherwise.
+	 * </p>
+	 *
+	 * @return A read-only view of the content of the entry, or <code>null</code> if this archive does not contain it.
+	 */
+	abstract
+	public ByteBuffer map(String name) throws IOException;
+
+	/**
+	 * @return A stream over the content of the entry, or <code>null</code> if this archive does not contain it.
+	 */
+	abstract
+	public InputStream openStream(String name) throws IOException;
+
+	/**
+	 * @return The names of all file entries.
+	 */
+	abstract
+	public List<String> list() throws IOException;
+
+	public URL getURL(){
+		return this.url;
+	}
+
+	/**
+	 * @return An archive, or <code>null</code> if the URL does not identify a local JAR file or directory.
+	 */
+	static
+	public Archive open(URL url) throws IOException {
+		String protocol = url.getProtocol();
+
+		if(!("file").equals(protocol)){
+			return null;
+		}
+
+		File file;
+
+		try {
+			file = new File(url.toURI());
+		} catch(IllegalArgumentException | URISyntaxException e){
+			return null;
+		}
+
+		if(file.isFile()){
+			return new JarArchive(url, file);
+		} else
+
+		// A missing directory or file contains no entries
+		{
+			return new DirectoryArchive(url, file);
+		}
+	}
+}
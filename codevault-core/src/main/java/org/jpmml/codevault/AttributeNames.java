@@ -11,4 +11,8 @@ public interface AttributeNames {
 
 	Attributes.Name CODEVAULT_ALGORITHM = new Attributes.Name("X-CodeVault-Algorithm");
 	Attributes.Name CODEVAULT_SECRETKEY_ID = new Attributes.Name("X-CodeVault-SecretKey-Id");
+	Attributes.Name CODEVAULT_FORMAT = new Attributes.Name("X-CodeVault-Format");
+	Attributes.Name CODEVAULT_COMPRESSION = new Attributes.Name("X-CodeVault-Compression");
+	Attributes.Name CODEVAULT_TRANSFORMATION = new Attributes.Name("X-CodeVault-Transformation");
+	Attributes.Name CODEVAULT_KEY_DERIVATION = new Attributes.Name("X-CodeVault-Key-Derivation");
 }
\ No newline at end of file
@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * <p>
+ * A compact binary key index, which is queried in place.
+ * </p>
+ *
+ * <p>
+ * The index consists of a header, a table of distinct key descriptors, a table of fixed-size entry records that is sorted by entry name, and a pool of entry names:
+ * <pre>
+ * header     := magic(4) version(1) descriptorCount(2) mainDescriptor(2) entryCount(4)
+ * descriptor := algorithm secretKeyId format compression transformation keyDerivation
+ * string     := length(2) bytes(length), where the length 0xFFFF denotes <code>null</code>
+ * entry      := nameOffset(4) nameLength(2) descriptor(2)
+ * </pre>
+ * Entry names are encoded in UTF-8, and are sorted in unsigned byte order.
+ * The descriptor index 0xFFFF denotes {@link KeyDescriptor#NONE}.
+ * </p>
+ *
+ * <p>
+ * Version 1 descriptors do not have the transformation and key derivation components, and version 2 descriptors do not have the key derivation component.
+ * Indexes are written in the lowest possible version, so that they remain readable by older versions of this library.
+ * </p>
+ *
+ * Entry descriptors are stored as effective descriptors, ie. with main attributes already applied.
+ */
+public class BinaryKeyIndex {
+
+	private ByteBuffer content = null;
+
+	private KeyDescriptor[] descriptors = null;
+
+	private KeyDescriptor mainDescriptor = null;
+
+	private int entryCount = 0;
+
+	private int entryOffset = 0;
+
+	private int nameOffset = 0;
+
+	private boolean prefixRules = false;
+
+
+	/**
+	 * @param content The index. Typically, a memory-mapped buffer.
+	 */
+	public BinaryKeyIndex(ByteBuffer content) throws IOException {
+		content = content.slice();
+
+		try {
+			byte[] magic = new byte[MAGIC.length];
+
+			content.get(magic);
+
+			if(!Arrays.equals(MAGIC, magic)){
+				throw new IOException("Not a binary key index");
+			}
+
+			byte version = content.get();
+			if(version < 1 || version > VERSION){
+				throw new IOException("Unsupported binary key index version " + version);
+			}
+
+			int descriptorCount = content.getShort() & 0xFFFF;
+			int mainDescriptor = content.getShort() & 0xFFFF;
+			int entryCount = content.getInt();
+
+			KeyDescriptor[] descriptors = new KeyDescriptor[descriptorCount];
+
+			for(int i = 0; i < descriptorCount; i++){
+				String algorithm = readString(content);
+				String secretKeyId = readString(content);
+				String format = readString(content);
+				String compression = readString(content);
+				String transformation = (version > 1 ? readString(content) : null);
+				String keyDerivation = (version > 2 ? readString(content) : null);
+
+				descriptors[i] = new KeyDescriptor(algorithm, secretKeyId, format, compression, transformation, keyDerivation);
+			}
+
+			this.descriptors = descriptors;
+			this.mainDescriptor = getDescriptor(mainDescriptor);
+
+			if(entryCount < 0 || ((long)entryCount * ENTRY_SIZE) > content.remaining()){
+				throw new IOException("Malformed binary key index");
+			}
+
+			this.entryCount = entryCount;
+			this.entryOffset = content.position();
+			this.nameOffset = this.entryOffset + (entryCount * ENTRY_SIZE);
+		} catch(BufferUnderflowException | IndexOutOfBoundsException e){
+			throw new IOException("Malformed binary key index", e);
+		}
+
+		int nameSize = content.limit() - this.nameOffset;
+
+		for(int i = 0; i < this.entryCount; i++){
+			int position = this.entryOffset + (i * ENTRY_SIZE);
+
+			long end = (long)content.getInt(position) + (content.getShort(position + 4) & 0xFFFF);
+			int descriptor = content.getShort(position + 6) & 0xFFFF;
+
+			if(content.getInt(position) < 0 || end > nameSize || (descriptor != NONE && descriptor >= this.descriptors.length)){
+				throw new IOException("Malformed binary key index");
+			} // End if
+
+			if(end > 0 && content.get(this.nameOffset + (int)end - 1) == '/'){
+				this.prefixRules = true;
+			}
+		}
+
+		this.content = content;
+	}
+
+	public KeyDescriptor getMainDescriptor(){
+		return this.mainDescriptor;
+	}
+
+	/**
+	 * @return The entry descriptor, or <code>null</code> if this index does not contain the entry.
+	 */
+	public KeyDescriptor getEntryDescriptor(String name){
+		return getEntryDescriptor(name, name.length());
+	}
+
+	/**
+	 * @param length The length of the entry name, as a prefix of the string.
+	 *
+	 * @return The entry descriptor, or <code>null</code> if this index does not contain the entry.
+	 */
+	KeyDescriptor getEntryDescriptor(String name, int length){
+		int index = search(name, length);
+
+		if(index < 0){
+			return null;
+		}
+
+		return getDescriptor(this.content.getShort(this.entryOffset + (index * ENTRY_SIZE) + 6) & 0xFFFF);
+	}
+
+	public boolean containsEntry(String name){
+		return search(name, name.length()) >= 0;
+	}
+
+	/**
+	 * @return The names of entries whose descriptor satisfies the predicate, in index order.
+	 */
+	public List<String> getEntryNames(Predicate<KeyDescriptor> predicate){
+		ByteBuffer content = this.content;
+
+		boolean[] matches = new boolean[this.descriptors.length];
+		for(int i = 0; i < this.descriptors.length; i++){
+			matches[i] = predicate.test(this.descriptors[i]);
+		}
+
+		boolean matchesNone = predicate.test(KeyDescriptor.NONE);
+
+		List<String> result = new ArrayList<>();
+
+		for(int i = 0; i < this.entryCount; i++){
+			int descriptor = content.getShort(this.entryOffset + (i * ENTRY_SIZE) + 6) & 0xFFFF;
+
+			if(descriptor == NONE ? matchesNone : matches[descriptor]){
+				result.add(getName(i));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return <code>true</code> if this index contains prefix rules, <code>false</code> otherwise.
+	 *
+	 * @see KeyIndex#getRuleDescriptor(String)
+	 */
+	public boolean hasPrefixRules(){
+		return this.prefixRules;
+	}
+
+	public int size(){
+		return this.entryCount;
+	}
+
+	private KeyDescriptor getDescriptor(int index){
+
+		if(index == NONE){
+			return KeyDescriptor.NONE;
+		}
+
+		return this.descriptors[index];
+	}
+
+	private String getName(int index){
+		ByteBuffer content = this.content;
+
+		int position = this.entryOffset + (index * ENTRY_SIZE);
+
+		byte[] bytes = new byte[content.getShort(position + 4) & 0xFFFF];
+
+		ByteBuffer buffer = content.duplicate();
+		((Buffer)buffer).position(this.nameOffset + content.getInt(position));
+		buffer.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int search(String name, int nameLength){
+		ByteBuffer content = this.content;
+
+		int low = 0;
+		int high = this.entryCount - 1;
+
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+
+			int position = this.entryOffset + (mid * ENTRY_SIZE);
+
+			int order = compare(content, this.nameOffset + content.getInt(position), content.getShort(position + 4) & 0xFFFF, name, nameLength);
+
+			if(order < 0){
+				low = mid + 1;
+			} else
+
+			if(order > 0){
+				high = mid - 1;
+			} else
+
+			{
+				return mid;
+			}
+		}
+
+		return -1;
+	}
+
+	static
+	public byte[] encode(KeyIndex keyIndex) throws IOException {
+		KeyDescriptor mainDescriptor = keyIndex.getMainDescriptor();
+
+		Map<String, KeyDescriptor> entryDescriptors = keyIndex.getEntryDescriptors();
+
+		Map<KeyDescriptor, Integer> descriptors = new LinkedHashMap<>();
+
+		if(mainDescriptor != KeyDescriptor.NONE){
+			descriptors.put(mainDescriptor, descriptors.size());
+		}
+
+		for(KeyDescriptor entryDescriptor : entryDescriptors.values()){
+
+			if(entryDescriptor != KeyDescriptor.NONE && !descriptors.containsKey(entryDescriptor)){
+				descriptors.put(entryDescriptor, descriptors.size());
+			}
+		}
+
+		if(descriptors.size() >= NONE){
+			throw new IOException("Too many distinct key descriptors");
+		}
+
+		byte[][] names = new byte[entryDescriptors.size()][];
+		KeyDescriptor[] values = new KeyDescriptor[names.length];
+
+		int count = 0;
+
+		for(Map.Entry<String, KeyDescriptor> entry : entryDescriptors.entrySet()){
+			names[count] = (entry.getKey()).getBytes(StandardCharsets.UTF_8);
+			values[count] = entry.getValue();
+
+			if(names[count].length >= 0xFFFF){
+				throw new IOException("Entry name " + entry.getKey() + " is too long");
+			}
+
+			count++;
+		}
+
+		Integer[] order = new Integer[count];
+		for(int i = 0; i < count; i++){
+			order[i] = i;
+		}
+
+		Arrays.sort(order, (left, right) -> compare(names[left], names[right]));
+
+		byte version = 1;
+
+		for(KeyDescriptor descriptor : descriptors.keySet()){
+
+			if(descriptor.getKeyDerivation() != null){
+				version = (byte)Math.max(version, 3);
+			} else
+
+			if(descriptor.getTransformation() != null){
+				version = (byte)Math.max(version, 2);
+			}
+		}
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		try(DataOutputStream os = new DataOutputStream(buffer)){
+			os.write(MAGIC);
+			os.writeByte(version);
+			os.writeShort(descriptors.size());
+			os.writeShort(mainDescriptor != KeyDescriptor.NONE ? descriptors.get(mainDescriptor) : NONE);
+			os.writeInt(count);
+
+			for(KeyDescriptor descriptor : descriptors.keySet()){
+				writeString(os, descriptor.getAlgorithm());
+				writeString(os, descriptor.getSecretKeyId());
+				writeString(os, descriptor.getFormat());
+				writeString(os, descriptor.getCompression());
+
+				if(version > 1){
+					writeString(os, descriptor.getTransformation());
+				} // End if
+
+				if(version > 2){
+					writeString(os, descriptor.getKeyDerivation());
+				}
+			}
+
+			int nameOffset = 0;
+
+			for(Integer index : order){
+				KeyDescriptor value = values[index];
+
+				os.writeInt(nameOffset);
+				os.writeShort(names[index].length);
+				os.writeShort(value != KeyDescriptor.NONE ? descriptors.get(value) : NONE);
+
+				nameOffset += names[index].length;
+			}
+
+			for(Integer index : order){
+				os.write(names[index]);
+			}
+		}
+
+		return buffer.toByteArray();
+	}
+
+	static
+	private String readString(ByteBuffer buffer){
+		int length = buffer.getShort() & 0xFFFF;
+
+		if(length == NONE){
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+
+		buffer.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static
+	private void writeString(DataOutputStream os, String string) throws IOException {
+
+		if(string == null){
+			os.writeShort(NONE);
+
+			return;
+		}
+
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+		if(bytes.length >= NONE){
+			throw new IOException("String " + string + " is too long");
+		}
+
+		os.writeShort(bytes.length);
+		os.write(bytes);
+	}
+
+	static
+	private int compare(ByteBuffer buffer, int offset, int length, byte[] bytes){
+		int commonLength = Math.min(length, bytes.length);
+
+		for(int i = 0; i < commonLength; i++){
+			int order = (buffer.get(offset + i) & 0xFF) - (bytes[i] & 0xFF);
+
+			if(order != 0){
+				return order;
+			}
+		}
+
+		return length - bytes.length;
+	}
+
+	/**
+	 * <p>
+	 * Compares a UTF-8 encoded name with a prefix of a string, without encoding the string.
+	 * </p>
+	 *
+	 * Unpaired surrogates are encoded as <code>?</code> characters, like {@link String#getBytes(java.nio.charset.Charset)} does.
+	 */
+	static
+	private int compare(ByteBuffer buffer, int offset, int length, String name, int nameLength){
+		int position = 0;
+
+		for(int i = 0; i < nameLength; i++){
+			int codePoint = name.charAt(i);
+
+			if(Character.isSurrogate((char)codePoint)){
+
+				if(Character.isHighSurrogate((char)codePoint) && (i + 1) < nameLength && Character.isLowSurrogate(name.charAt(i + 1))){
+					codePoint = Character.toCodePoint((char)codePoint, name.charAt(i + 1));
+
+					i++;
+				} else
+
+				{
+					codePoint = '?';
+				}
+			}
+
+			int count = (codePoint < 0x80 ? 1 : (codePoint < 0x800 ? 2 : (codePoint < 0x10000 ? 3 : 4)));
+
+			for(int j = 0; j < count; j++){
+
+				if(position == length){
+					return -1;
+				}
+
+				int order = (buffer.get(offset + position) & 0xFF) - toUTF8Byte(codePoint, count, j);
+
+				if(order != 0){
+					return order;
+				}
+
+				position++;
+			}
+		}
+
+		return length - position;
+	}
+
+	/**
+	 * @param count The number of bytes in the encoding of the code point.
+	 * @param index The index of the byte.
+	 */
+	static
+	private int toUTF8Byte(int codePoint, int count, int index){
+
+		if(count == 1){
+			return codePoint;
+		}
+
+		int shift = 6 * (count - 1 - index);
+
+		if(index == 0){
+			return ((0xF00 >> count) & 0xFF) | (codePoint >> shift);
+		}
+
+		return 0x80 | ((codePoint >> shift) & 0x3F);
+	}
+
+	static
+	private int compare(byte[] left, byte[] right){
+		return compare(ByteBuffer.wrap(left), 0, left.length, right);
+	}
+
+	public static final String NAME = "CODEVAULT.IDX";
+
+	private static final byte[] MAGIC = {'C', 'V', 'I', 'X'};
+
+	private static final byte VERSION = 3;
+
+	private static final int ENTRY_SIZE = 4 + 2 + 2;
+
+	private static final int NONE = 0xFFFF;
+}
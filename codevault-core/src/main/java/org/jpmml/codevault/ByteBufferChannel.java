@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * <p>
+ * A read-only channel over the remaining content of a buffer.
+ * </p>
+ */
+class ByteBufferChannel implements SeekableByteChannel {
+
+	private ByteBuffer buffer = null;
+
+
+	ByteBufferChannel(ByteBuffer buffer){
+		this.buffer = buffer.slice();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		ByteBuffer buffer = ensureOpen();
+
+		if(!buffer.hasRemaining()){
+			return -1;
+		}
+
+		int count = Math.min(dst.remaining(), buffer.remaining());
+
+		ByteBuffer src = buffer.duplicate();
+		((Buffer)src).limit(src.position() + count);
+
+		dst.put(src);
+
+		((Buffer)buffer).position(buffer.position() + count);
+
+		return count;
+	}
+
+	@Override
+	public int write(ByteBuffer src){
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException {
+		ByteBuffer buffer = ensureOpen();
+
+		return buffer.position();
+	}
+
+	@Override
+	public SeekableByteChannel position(long position) throws IOException {
+		ByteBuffer buffer = ensureOpen();
+
+		if(position < 0){
+			throw new IllegalArgumentException();
+		}
+
+		((Buffer)buffer).position((int)Math.min(position, buffer.limit()));
+
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		ByteBuffer buffer = ensureOpen();
+
+		return buffer.limit();
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size){
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen(){
+		return (this.buffer != null);
+	}
+
+	@Override
+	public void close(){
+		this.buffer = null;
+	}
+
+	private ByteBuffer ensureOpen() throws IOException {
+
+		if(this.buffer == null){
+			throw new ClosedChannelException();
+		}
+
+		return this.buffer;
+	}
+}
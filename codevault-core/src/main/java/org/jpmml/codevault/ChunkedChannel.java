@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+/**
+ * <p>
+ * A read-only channel over the plaintext of a chunked container.
+ * </p>
+ *
+ * Segments are decrypted on demand, so positioning the channel does not require decrypting any preceding content.
+ *
+ * @see ChunkedFormat
+ */
+public class ChunkedChannel implements SeekableByteChannel {
+
+	private Key key = null;
+
+	private ByteBuffer content = null;
+
+	private ChunkedFormat.Header header = null;
+
+	private long position = 0L;
+
+	private int segmentIndex = -1;
+
+	private ByteBuffer segment = null;
+
+	private boolean open = true;
+
+
+	/**
+	 * @param content The container. Typically, a memory-mapped buffer.
+	 */
+	public ChunkedChannel(Key key, ByteBuffer content) throws GeneralSecurityException {
+		ChunkedFormat.checkKey(key);
+
+		this.key = key;
+		this.content = content.slice();
+		this.header = ChunkedFormat.Header.read(this.content);
+		this.segment = ByteBuffer.allocate(this.header.getChunkSize());
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		ensureOpen();
+
+		long length = size();
+
+		if(this.position >= length){
+			return -1;
+		}
+
+		int result = 0;
+
+		while(dst.hasRemaining() && this.position < length){
+			int index = (int)(this.position / this.header.getChunkSize());
+
+			ByteBuffer segment = loadSegment(index);
+
+			int offset = (int)(this.position - this.header.getSegmentOffset(index));
+
+			int count = Math.min(dst.remaining(), segment.limit() - offset);
+
+			ByteBuffer src = segment.duplicate();
+			((Buffer)src).position(offset);
+			((Buffer)src).limit(offset + count);
+
+			dst.put(src);
+
+			this.position += count;
+
+			result += count;
+		}
+
+		return result;
+	}
+
+	@Override
+	public int write(ByteBuffer src){
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException {
+		ensureOpen();
+
+		return this.position;
+	}
+
+	@Override
+	public ChunkedChannel position(long position) throws IOException {
+		ensureOpen();
+
+		if(position < 0){
+			throw new IllegalArgumentException();
+		}
+
+		this.position = position;
+
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		ensureOpen();
+
+		return this.header.getLength();
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size){
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen(){
+		return this.open;
+	}
+
+	@Override
+	public void close(){
+		this.open = false;
+
+		this.content = null;
+		this.segment = null;
+	}
+
+	private ByteBuffer loadSegment(int index) throws IOException {
+
+		if(this.segmentIndex != index){
+			this.segmentIndex = -1;
+
+			ByteBuffer segment = this.segment;
+			((Buffer)segment).clear();
+
+			try {
+				ChunkedFormat.decryptSegment(this.key, this.header, index, this.header.getSegment(this.content, index), segment);
+			} catch(GeneralSecurityException gse){
+				throw new IOException("Error decrypting segment " + index, gse);
+			}
+
+			((Buffer)segment).flip();
+
+			this.segmentIndex = index;
+		}
+
+		return this.segment;
+	}
+
+	private void ensureOpen() throws IOException {
+
+		if(!this.open){
+			throw new ClosedChannelException();
+		}
+	}
+}
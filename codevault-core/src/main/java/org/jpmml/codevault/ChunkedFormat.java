@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * <p>
+ * The chunked container format.
+ * </p>
+ *
+ * <p>
+ * A container consists of a header, followed by a sequence of independently encrypted and authenticated segments:
+ * <pre>
+ * header  := magic(4) version(1) chunkSize(4) length(8) noncePrefix(8)
+ * segment := ciphertext(chunkSize + 16)
+ * </pre>
+ * All segments except the last one hold exactly <code>chunkSize</code> bytes of plaintext.
+ * </p>
+ *
+ * <p>
+ * Segments are encrypted using AES in GCM mode.
+ * The nonce of a segment is the nonce prefix followed by the segment index.
+ * The header is authenticated as the additional data of every segment,
+ * which prevents segments from being reordered, truncated or transplanted between containers.
+ * </p>
+ */
+public class ChunkedFormat {
+
+	private ChunkedFormat(){
+	}
+
+	static
+	public byte[] encrypt(Key key, byte[] content, int chunkSize) throws GeneralSecurityException {
+
+		if(chunkSize < 1){
+			throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+		}
+
+		int segmentCount = getSegmentCount(content.length, chunkSize);
+
+		ByteBuffer result = ByteBuffer.allocate(HEADER_SIZE + content.length + (segmentCount * TAG_SIZE));
+
+		byte[] noncePrefix = new byte[8];
+
+		ChunkedFormat.random.nextBytes(noncePrefix);
+
+		result.put(MAGIC);
+		result.put(VERSION);
+		result.putInt(chunkSize);
+		result.putLong(content.length);
+		result.put(noncePrefix);
+
+		byte[] header = new byte[HEADER_SIZE];
+
+		System.arraycopy(result.array(), 0, header, 0, HEADER_SIZE);
+
+		checkKey(key);
+
+		CipherCache cipherCache = CodeVaultUtil.getCipherCache();
+
+		for(int i = 0; i < segmentCount; i++){
+			int offset = i * chunkSize;
+			int length = Math.min(chunkSize, content.length - offset);
+
+			Cipher cipher = cipherCache.get(Cipher.ENCRYPT_MODE, TRANSFORMATION, key, createParameterSpec(noncePrefix, i));
+
+			int count;
+
+			try {
+				cipher.updateAAD(header);
+
+				count = cipher.doFinal(content, offset, length, result.array(), result.position());
+			} catch(GeneralSecurityException | RuntimeException e){
+				cipherCache.discard(cipher);
+
+				throw e;
+			}
+
+			((Buffer)result).position(result.position() + count);
+		}
+
+		return result.array();
+	}
+
+	/**
+	 * <p>
+	 * Decrypts all segments of a container.
+	 * </p>
+	 *
+	 * @param executor The executor for segment decryption tasks, or <code>null</code> to decrypt in the calling thread.
+	 */
+	static
+	public ByteBuffer decrypt(Key key, ByteBuffer content, Executor executor) throws GeneralSecurityException {
+		Header header = Header.read(content);
+
+		long length = header.getLength();
+		if(length > Integer.MAX_VALUE){
+			throw new GeneralSecurityException("Container length " + length + " exceeds the maximum buffer size");
+		}
+
+		ByteBuffer result = ByteBuffer.allocate((int)length);
+
+		int segmentCount = header.getSegmentCount();
+
+		if(executor == null){
+			decryptSegments(key, header, content, result, 0, segmentCount);
+
+			return result;
+		}
+
+		int batchSize = Math.max(1, (1024 * 1024) / header.getChunkSize());
+
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+		for(int i = 0; i < segmentCount; i += batchSize){
+			int begin = i;
+			int end = Math.min(i + batchSize, segmentCount);
+
+			CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+
+				try {
+					decryptSegments(key, header, content, result, begin, end);
+				} catch(GeneralSecurityException gse){
+					throw new CompletionException(gse);
+				}
+			}, executor);
+
+			futures.add(future);
+		}
+
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+		} catch(CompletionException ce){
+			Throwable cause = ce.getCause();
+
+			if(cause instanceof GeneralSecurityException){
+				throw (GeneralSecurityException)cause;
+			}
+
+			throw ce;
+		}
+
+		return result;
+	}
+
+	static
+	private void decryptSegments(Key key, Header header, ByteBuffer content, ByteBuffer result, int begin, int end) throws GeneralSecurityException {
+		checkKey(key);
+
+		for(int i = begin; i < end; i++){
+			ByteBuffer segment = header.getSegment(content, i);
+
+			ByteBuffer output = result.duplicate();
+			((Buffer)output).position((int)header.getSegmentOffset(i));
+
+			decryptSegment(key, header, i, segment, output);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Decrypts a single segment.
+	 * </p>
+	 *
+	 * The cipher is obtained from the cipher cache of the current thread, and is re-initialized with the segment nonce.
+	 */
+	static
+	void decryptSegment(Key key, Header header, int index, ByteBuffer segment, ByteBuffer output) throws GeneralSecurityException {
+		CipherCache cipherCache = CodeVaultUtil.getCipherCache();
+
+		Cipher cipher = cipherCache.get(Cipher.DECRYPT_MODE, TRANSFORMATION, key, createParameterSpec(header.getNoncePrefix(), index));
+
+		try {
+			cipher.updateAAD(header.getBytes());
+
+			cipher.doFinal(segment, output);
+		} catch(GeneralSecurityException | RuntimeException e){
+			cipherCache.discard(cipher);
+
+			throw e;
+		}
+	}
+
+	static
+	public boolean isChunked(ByteBuffer content){
+
+		if(content.remaining() < HEADER_SIZE){
+			return false;
+		}
+
+		for(int i = 0; i < MAGIC.length; i++){
+
+			if(content.get(content.position() + i) != MAGIC[i]){
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	static
+	void checkKey(Key key) throws GeneralSecurityException {
+
+		if(!("AES").equalsIgnoreCase(key.getAlgorithm())){
+			throw new GeneralSecurityException("The chunked format requires an AES key, got " + key.getAlgorithm() + " key");
+		}
+	}
+
+	static
+	private GCMParameterSpec createParameterSpec(byte[] noncePrefix, int index){
+		byte[] nonce = new byte[NONCE_SIZE];
+
+		System.arraycopy(noncePrefix, 0, nonce, 0, noncePrefix.length);
+
+		nonce[8] = (byte)(index >>> 24);
+		nonce[9] = (byte)(index >>> 16);
+		nonce[10] = (byte)(index >>> 8);
+		nonce[11] = (byte)index;
+
+		return new GCMParameterSpec(TAG_SIZE * 8, nonce);
+	}
+
+	static
+	private int getSegmentCount(long length, int chunkSize){
+		long result = (length + chunkSize - 1) / chunkSize;
+
+		// An empty container consists of a single empty segment
+		result = Math.max(result, 1);
+
+		if(result > Integer.MAX_VALUE){
+			throw new IllegalArgumentException();
+		}
+
+		return (int)result;
+	}
+
+	static
+	class Header {
+
+		private byte[] bytes = null;
+
+		private int chunkSize = 0;
+
+		private long length = 0L;
+
+		private byte[] noncePrefix = null;
+
+
+		private Header(byte[] bytes, int chunkSize, long length, byte[] noncePrefix){
+			this.bytes = bytes;
+			this.chunkSize = chunkSize;
+			this.length = length;
+			this.noncePrefix = noncePrefix;
+		}
+
+		public byte[] getBytes(){
+			return this.bytes;
+		}
+
+		public int getChunkSize(){
+			return this.chunkSize;
+		}
+
+		public long getLength(){
+			return this.length;
+		}
+
+		public byte[] getNoncePrefix(){
+			return this.noncePrefix;
+		}
+
+		public int getSegmentCount(){
+			return ChunkedFormat.getSegmentCount(this.length, this.chunkSize);
+		}
+
+		/**
+		 * @return The plaintext offset of the specified segment.
+		 */
+		public long getSegmentOffset(int index){
+			return (long)index * this.chunkSize;
+		}
+
+		/**
+		 * @param content The container, positioned at the header.
+		 *
+		 * @return The ciphertext of the specified segment.
+		 */
+		public ByteBuffer getSegment(ByteBuffer content, int index) throws GeneralSecurityException {
+			long plaintextOffset = getSegmentOffset(index);
+			long plaintextLength = Math.min(this.chunkSize, this.length - plaintextOffset);
+
+			long offset = HEADER_SIZE + plaintextOffset + ((long)index * TAG_SIZE);
+			long length = plaintextLength + TAG_SIZE;
+
+			if(offset + length > content.remaining()){
+				throw new AEADBadTagException("Truncated segment " + index);
+			}
+
+			ByteBuffer result = content.duplicate();
+			((Buffer)result).position(content.position() + (int)offset);
+			((Buffer)result).limit(result.position() + (int)length);
+
+			return result;
+		}
+
+		static
+		public Header read(ByteBuffer content) throws GeneralSecurityException {
+
+			if(!isChunked(content)){
+				throw new GeneralSecurityException("Not a chunked container");
+			}
+
+			ByteBuffer buffer = content.duplicate();
+
+			byte[] bytes = new byte[HEADER_SIZE];
+
+			try {
+				buffer.get(bytes);
+			} catch(BufferUnderflowException bue){
+				throw new GeneralSecurityException(bue);
+			}
+
+			buffer = ByteBuffer.wrap(bytes);
+			((Buffer)buffer).position(MAGIC.length);
+
+			byte version = buffer.get();
+			if(version != VERSION){
+				throw new GeneralSecurityException("Unsupported chunked container version " + version);
+			}
+
+			int chunkSize = buffer.getInt();
+			long length = buffer.getLong();
+
+			if(chunkSize < 1 || length < 0){
+				throw new GeneralSecurityException("Malformed chunked container header");
+			}
+
+			byte[] noncePrefix = new byte[8];
+
+			buffer.get(noncePrefix);
+
+			return new Header(bytes, chunkSize, length, noncePrefix);
+		}
+	}
+
+	public static final String FORMAT = "chunked";
+
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	private static final byte[] MAGIC = {'C', 'V', 'C', 'K'};
+
+	private static final byte VERSION = 1;
+
+	static final int HEADER_SIZE = 4 + 1 + 4 + 8 + 8;
+
+	private static final int NONCE_SIZE = 12;
+
+	static final int TAG_SIZE = 16;
+
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+	private static final SecureRandom random = new SecureRandom();
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+/**
+ * <p>
+ * A stream over the plaintext of a chunked container, which decrypts one segment at a time.
+ * </p>
+ *
+ * @see ChunkedFormat
+ */
+public class ChunkedInputStream extends FilterInputStream {
+
+	private Key key = null;
+
+	private ChunkedFormat.Header header = null;
+
+	private int segmentIndex = -1;
+
+	private ByteBuffer ciphertext = null;
+
+	private ByteBuffer plaintext = null;
+
+
+	public ChunkedInputStream(Key key, InputStream is) throws GeneralSecurityException {
+		super(is);
+
+		ChunkedFormat.checkKey(key);
+
+		this.key = key;
+	}
+
+	@Override
+	public int read() throws IOException {
+		ByteBuffer plaintext = ensurePlaintext();
+
+		if(plaintext == null){
+			return -1;
+		}
+
+		return plaintext.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+
+		if(length == 0){
+			return 0;
+		}
+
+		ByteBuffer plaintext = ensurePlaintext();
+
+		if(plaintext == null){
+			return -1;
+		}
+
+		int count = Math.min(length, plaintext.remaining());
+
+		plaintext.get(bytes, offset, count);
+
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long result = 0L;
+
+		while(result < n){
+			ByteBuffer plaintext = ensurePlaintext();
+
+			if(plaintext == null){
+				break;
+			}
+
+			int count = (int)Math.min(n - result, plaintext.remaining());
+
+			((Buffer)plaintext).position(plaintext.position() + count);
+
+			result += count;
+		}
+
+		return result;
+	}
+
+	@Override
+	public int available(){
+		return (this.plaintext != null ? this.plaintext.remaining() : 0);
+	}
+
+	@Override
+	public boolean markSupported(){
+		return false;
+	}
+
+	@Override
+	public void mark(int readLimit){
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("Mark/reset not supported");
+	}
+
+	/**
+	 * @return A buffer that has remaining content, or <code>null</code> if the end of the stream has been reached.
+	 */
+	private ByteBuffer ensurePlaintext() throws IOException {
+
+		if(this.header == null){
+			byte[] bytes = new byte[ChunkedFormat.HEADER_SIZE];
+
+			readFully(bytes, bytes.length);
+
+			try {
+				this.header = ChunkedFormat.Header.read(ByteBuffer.wrap(bytes));
+			} catch(GeneralSecurityException gse){
+				throw new IOException(gse);
+			}
+
+			int chunkSize = this.header.getChunkSize();
+
+			this.ciphertext = ByteBuffer.allocate(chunkSize + ChunkedFormat.TAG_SIZE);
+			this.plaintext = ByteBuffer.allocate(chunkSize);
+			((Buffer)this.plaintext).limit(0);
+		}
+
+		ChunkedFormat.Header header = this.header;
+
+		while(!this.plaintext.hasRemaining()){
+			int index = this.segmentIndex + 1;
+
+			if(index >= header.getSegmentCount()){
+				return null;
+			}
+
+			long plaintextLength = Math.min(header.getChunkSize(), header.getLength() - header.getSegmentOffset(index));
+
+			int length = (int)plaintextLength + ChunkedFormat.TAG_SIZE;
+
+			ByteBuffer ciphertext = this.ciphertext;
+
+			readFully(ciphertext.array(), length);
+
+			((Buffer)ciphertext).clear();
+			((Buffer)ciphertext).limit(length);
+
+			ByteBuffer plaintext = this.plaintext;
+			((Buffer)plaintext).clear();
+
+			try {
+				ChunkedFormat.decryptSegment(this.key, header, index, ciphertext, plaintext);
+			} catch(GeneralSecurityException gse){
+				throw new IOException("Error decrypting segment " + index, gse);
+			}
+
+			((Buffer)plaintext).flip();
+
+			this.segmentIndex = index;
+		}
+
+		return this.plaintext;
+	}
+
+	private void readFully(byte[] bytes, int length) throws IOException {
+		int offset = 0;
+
+		while(offset < length){
+			int count = this.in.read(bytes, offset, length - offset);
+
+			if(count < 0){
+				throw new EOFException("Truncated chunked container");
+			}
+
+			offset += count;
+		}
+	}
+}
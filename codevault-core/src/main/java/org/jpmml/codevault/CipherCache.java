@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+
+/**
+ * <p>
+ * A thread-confined cache of initialized {@link Cipher} objects.
+ * </p>
+ *
+ * All caches are invalidated together when a secret key is replaced, so that ciphers do not keep replaced key material reachable.
+ * A cache releases its ciphers on its next use by the owning thread.
+ */
+class CipherCache {
+
+	private Map<CacheKey, Cipher> ciphers = null;
+
+	private int generation = 0;
+
+
+	CipherCache(int maximumSize){
+		this.ciphers = new LinkedHashMap<CacheKey, Cipher>(16, 0.75f, true){
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, Cipher> entry){
+				return size() > maximumSize;
+			}
+		};
+
+		this.generation = CipherCache.currentGeneration.get();
+	}
+
+	/**
+	 * <p>
+	 * Obtains a cipher that is initialized for the specified operation mode and key.
+	 * </p>
+	 *
+	 * The cipher returns to its initialized state after every successful <code>doFinal</code> method call.
+	 * A cipher whose operation failed must be discarded using {@link #discard(Cipher)}.
+	 */
+	Cipher get(int mode, String transformation, Key key) throws GeneralSecurityException {
+		validate();
+
+		CacheKey cacheKey = new CacheKey(mode, transformation, key);
+
+		Cipher cipher = this.ciphers.get(cacheKey);
+		if(cipher == null){
+			cipher = Cipher.getInstance(transformation);
+			cipher.init(mode, key);
+
+			this.ciphers.put(cacheKey, cipher);
+		}
+
+		return cipher;
+	}
+
+	/**
+	 * <p>
+	 * Obtains a cipher that is re-initialized for the specified operation mode, key and algorithm parameters.
+	 * </p>
+	 *
+	 * Re-initialization is cheap compared to cipher lookup.
+	 * It is required for transformations that take a fresh IV or nonce for every operation.
+	 */
+	Cipher get(int mode, String transformation, Key key, AlgorithmParameterSpec parameterSpec) throws GeneralSecurityException {
+		validate();
+
+		CacheKey cacheKey = new CacheKey(mode, transformation, key);
+
+		Cipher cipher = this.ciphers.get(cacheKey);
+		if(cipher == null){
+			cipher = Cipher.getInstance(transformation);
+
+			this.ciphers.put(cacheKey, cipher);
+		}
+
+		try {
+			cipher.init(mode, key, parameterSpec);
+		} catch(GeneralSecurityException | RuntimeException e){
+			discard(cipher);
+
+			throw e;
+		}
+
+		return cipher;
+	}
+
+	void discard(Cipher cipher){
+		(this.ciphers.values()).removeIf(value -> value == cipher);
+	}
+
+	void clear(){
+		this.ciphers.clear();
+	}
+
+	private void validate(){
+		int generation = CipherCache.currentGeneration.get();
+
+		if(this.generation != generation){
+			this.ciphers.clear();
+
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Invalidates the caches of all threads.
+	 * </p>
+	 */
+	static
+	void invalidateAll(){
+		CipherCache.currentGeneration.incrementAndGet();
+	}
+
+	static
+	private class CacheKey {
+
+		private int mode = 0;
+
+		private String transformation = null;
+
+		private Key key = null;
+
+
+		private CacheKey(int mode, String transformation, Key key){
+			this.mode = mode;
+			this.transformation = Objects.requireNonNull(transformation);
+			this.key = Objects.requireNonNull(key);
+		}
+
+		@Override
+		public int hashCode(){
+			return (31 * this.mode) + (31 * this.transformation.hashCode()) + this.key.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object object){
+
+			if(object instanceof CacheKey){
+				CacheKey that = (CacheKey)object;
+
+				return (this.mode == that.mode) && (this.transformation).equals(that.transformation) && (this.key).equals(that.key);
+			}
+
+			return false;
+		}
+	}
+
+	private static final AtomicInteger currentGeneration = new AtomicInteger();
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+class ClassFileUtil {
+
+	private ClassFileUtil(){
+	}
+
+	/**
+	 * <p>
+	 * Reads the direct supertypes of a class from its class file.
+	 * </p>
+	 *
+	 * Only the constant pool and the class header are parsed. The position of the buffer is not changed.
+	 *
+	 * @return The binary names of the superclass (if any) and the direct superinterfaces, in declaration order.
+	 *
+	 * @throws IllegalArgumentException If the buffer does not contain a well-formed class file header.
+	 */
+	static
+	public List<String> getSuperTypes(ByteBuffer buffer){
+		buffer = buffer.duplicate();
+
+		try {
+			if(buffer.getInt() != MAGIC){
+				throw new IllegalArgumentException("Not a class file");
+			}
+
+			// Minor and major version
+			buffer.getInt();
+
+			int constantPoolCount = buffer.getShort() & 0xFFFF;
+
+			// The offset of every UTF-8 entry, and the name index of every class entry
+			int[] offsets = new int[constantPoolCount];
+			int[] nameIndices = new int[constantPoolCount];
+
+			for(int i = 1; i < constantPoolCount; i++){
+				int tag = buffer.get();
+
+				switch(tag){
+					case CONSTANT_Utf8:
+						offsets[i] = buffer.position();
+						skip(buffer, buffer.getShort() & 0xFFFF);
+						break;
+					case CONSTANT_Class:
+						nameIndices[i] = buffer.getShort() & 0xFFFF;
+						break;
+					case CONSTANT_String:
+					case CONSTANT_MethodType:
+					case CONSTANT_Module:
+					case CONSTANT_Package:
+						skip(buffer, 2);
+						break;
+					case CONSTANT_MethodHandle:
+						skip(buffer, 3);
+						break;
+					case CONSTANT_Integer:
+					case CONSTANT_Float:
+					case CONSTANT_Fieldref:
+					case CONSTANT_Methodref:
+					case CONSTANT_InterfaceMethodref:
+					case CONSTANT_NameAndType:
+					case CONSTANT_Dynamic:
+					case CONSTANT_InvokeDynamic:
+						skip(buffer, 4);
+						break;
+					case CONSTANT_Long:
+					case CONSTANT_Double:
+						skip(buffer, 8);
+						// Takes up two entries
+						i++;
+						break;
+					default:
+						throw new IllegalArgumentException("Invalid constant pool tag " + tag);
+				}
+			}
+
+			// Access flags and this class
+			skip(buffer, 4);
+
+			List<String> result = new ArrayList<>();
+
+			int superClassIndex = buffer.getShort() & 0xFFFF;
+			if(superClassIndex != 0){
+				result.add(getClassName(buffer, offsets, nameIndices, superClassIndex));
+			}
+
+			int interfacesCount = buffer.getShort() & 0xFFFF;
+			for(int i = 0; i < interfacesCount; i++){
+				result.add(getClassName(buffer, offsets, nameIndices, buffer.getShort() & 0xFFFF));
+			}
+
+			return result;
+		} catch(BufferUnderflowException | IndexOutOfBoundsException e){
+			throw new IllegalArgumentException("Truncated class file", e);
+		}
+	}
+
+	static
+	private String getClassName(ByteBuffer buffer, int[] offsets, int[] nameIndices, int index){
+		int offset = offsets[nameIndices[index]];
+
+		if(offset == 0){
+			throw new IllegalArgumentException("Invalid class index " + index);
+		}
+
+		// Includes the two-byte length prefix that is expected by the modified UTF-8 decoder
+		byte[] bytes = new byte[2 + (buffer.getShort(offset) & 0xFFFF)];
+
+		for(int i = 0; i < bytes.length; i++){
+			bytes[i] = buffer.get(offset + i);
+		}
+
+		String internalName;
+
+		try(DataInputStream is = new DataInputStream(new ByteArrayInputStream(bytes))){
+			internalName = is.readUTF();
+		} catch(IOException ioe){
+			throw new IllegalArgumentException(ioe);
+		}
+
+		return internalName.replace('/', '.');
+	}
+
+	static
+	private void skip(ByteBuffer buffer, int count){
+		((Buffer)buffer).position(buffer.position() + count);
+	}
+
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private static final int CONSTANT_Utf8 = 1;
+	private static final int CONSTANT_Integer = 3;
+	private static final int CONSTANT_Float = 4;
+	private static final int CONSTANT_Long = 5;
+	private static final int CONSTANT_Double = 6;
+	private static final int CONSTANT_Class = 7;
+	private static final int CONSTANT_String = 8;
+	private static final int CONSTANT_Fieldref = 9;
+	private static final int CONSTANT_Methodref = 10;
+	private static final int CONSTANT_InterfaceMethodref = 11;
+	private static final int CONSTANT_NameAndType = 12;
+	private static final int CONSTANT_MethodHandle = 15;
+	private static final int CONSTANT_MethodType = 16;
+	private static final int CONSTANT_Dynamic = 17;
+	private static final int CONSTANT_InvokeDynamic = 18;
+	private static final int CONSTANT_Module = 19;
+	private static final int CONSTANT_Package = 20;
+}
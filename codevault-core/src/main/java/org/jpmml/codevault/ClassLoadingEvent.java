@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name (
+	value = "org.jpmml.codevault.ClassLoading"
+)
+@Label (
+	value = "Vault Class Loading"
+)
+@Category (
+	value = {"JPMML-CodeVault"}
+)
+@Description (
+	value = "A class definition that was found by a decrypting class loader"
+)
+@StackTrace (
+	value = false
+)
+class ClassLoadingEvent extends Event {
+
+	@Label("Class Name")
+	String className;
+
+	@Label("Encrypted")
+	boolean encrypted;
+
+	@Label("Failed")
+	boolean failed;
+
+	@Label("Size")
+	@DataAmount
+	int size;
+
+	@Label("Lookup Time")
+	@Timespan
+	long lookupTime;
+
+	@Label("Read Time")
+	@Timespan
+	long readTime;
+
+	@Label("Key Resolution Time")
+	@Timespan
+	long keyResolutionTime;
+
+	@Label("Decrypt Time")
+	@Timespan
+	long decryptTime;
+
+	@Label("Define Time")
+	@Timespan
+	long defineTime;
+}
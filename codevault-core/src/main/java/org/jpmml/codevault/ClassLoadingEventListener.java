@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+/**
+ * <p>
+ * A listener that emits <code>org.jpmml.codevault.ClassLoading</code> Java Flight Recorder (JFR) events.
+ * </p>
+ *
+ * This class requires a Java runtime that provides the <code>jdk.jfr</code> API.
+ */
+public class ClassLoadingEventListener implements ClassLoadingListener {
+
+	@Override
+	public void classLoaded(ClassLoadingRecord record){
+		commit(record, false);
+	}
+
+	@Override
+	public void classLoadFailed(ClassLoadingRecord record, Throwable throwable){
+		commit(record, true);
+	}
+
+	static
+	private void commit(ClassLoadingRecord record, boolean failed){
+		ClassLoadingEvent event = new ClassLoadingEvent();
+
+		if(!event.isEnabled()){
+			return;
+		}
+
+		event.className = record.getName();
+		event.encrypted = record.isEncrypted();
+		event.failed = failed;
+		event.size = record.getSize();
+		event.lookupTime = record.getDuration(Phase.LOOKUP);
+		event.readTime = record.getDuration(Phase.READ);
+		event.keyResolutionTime = record.getDuration(Phase.KEY_RESOLUTION);
+		event.decryptTime = record.getDuration(Phase.DECRYPT);
+		event.defineTime = record.getDuration(Phase.DEFINE);
+
+		event.commit();
+	}
+}
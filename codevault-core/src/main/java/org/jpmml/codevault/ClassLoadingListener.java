@@ -0,0 +1,11 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+public interface ClassLoadingListener {
+
+	void classLoaded(ClassLoadingRecord record);
+
+	void classLoadFailed(ClassLoadingRecord record, Throwable throwable);
+}
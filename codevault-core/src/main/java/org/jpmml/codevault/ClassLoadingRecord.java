@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+/**
+ * <p>
+ * Per-phase timings of a single {@link DecryptingURLClassLoader#findClass(String)} method call.
+ * </p>
+ *
+ * @see ClassLoadingListener
+ */
+public class ClassLoadingRecord {
+
+	private String name = null;
+
+	private boolean encrypted = false;
+
+	private int size = 0;
+
+	private long[] durations = null;
+
+	private Phase phase = null;
+
+	private long phaseStart = 0L;
+
+
+	private ClassLoadingRecord(){
+	}
+
+	ClassLoadingRecord(String name){
+		this.name = name;
+		this.durations = new long[Phase.values().length];
+	}
+
+	public boolean isEnabled(){
+		return (this.durations != null);
+	}
+
+	void begin(Phase phase){
+
+		if(this.durations == null){
+			return;
+		}
+
+		end();
+
+		this.phase = phase;
+		this.phaseStart = System.nanoTime();
+	}
+
+	void end(){
+
+		if(this.phase == null){
+			return;
+		}
+
+		this.durations[this.phase.ordinal()] += (System.nanoTime() - this.phaseStart);
+
+		this.phase = null;
+	}
+
+	public String getName(){
+		return this.name;
+	}
+
+	public boolean isEncrypted(){
+		return this.encrypted;
+	}
+
+	void setEncrypted(boolean encrypted){
+
+		// The disabled record is shared between threads, and must stay unmodified
+		if(this.durations == null){
+			return;
+		}
+
+		this.encrypted = encrypted;
+	}
+
+	/**
+	 * @return The size of the class definition, in bytes.
+	 */
+	public int getSize(){
+		return this.size;
+	}
+
+	void setSize(int size){
+
+		if(this.durations == null){
+			return;
+		}
+
+		this.size = size;
+	}
+
+	/**
+	 * @return The duration of the specified phase, in nanoseconds.
+	 */
+	public long getDuration(Phase phase){
+		return this.durations[phase.ordinal()];
+	}
+
+	public long getTotalDuration(){
+		long result = 0L;
+
+		for(long duration : this.durations){
+			result += duration;
+		}
+
+		return result;
+	}
+
+	/**
+	 * A shared record that ignores all updates.
+	 */
+	static final ClassLoadingRecord DISABLED = new ClassLoadingRecord();
+}
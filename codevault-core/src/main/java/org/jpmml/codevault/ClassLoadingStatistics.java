@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * Cumulative class loading statistics.
+ * </p>
+ *
+ * All times are in nanoseconds.
+ */
+public class ClassLoadingStatistics implements ClassLoadingListener, ClassLoadingStatisticsMBean {
+
+	private KeyRegistry keyRegistry = null;
+
+	private LongAdder encryptedLoadCount = new LongAdder();
+
+	private LongAdder passThroughLoadCount = new LongAdder();
+
+	private LongAdder failureCount = new LongAdder();
+
+	private LongAdder decryptedBytes = new LongAdder();
+
+	private LongAdder[] times = new LongAdder[Phase.values().length];
+
+
+	public ClassLoadingStatistics(){
+		this(null);
+	}
+
+	public ClassLoadingStatistics(KeyRegistry keyRegistry){
+		this.keyRegistry = keyRegistry;
+
+		for(int i = 0; i < this.times.length; i++){
+			this.times[i] = new LongAdder();
+		}
+	}
+
+	@Override
+	public void classLoaded(ClassLoadingRecord record){
+
+		if(record.isEncrypted()){
+			this.encryptedLoadCount.increment();
+
+			this.decryptedBytes.add(record.getSize());
+		} else
+
+		{
+			this.passThroughLoadCount.increment();
+		}
+
+		addTimes(record);
+	}
+
+	@Override
+	public void classLoadFailed(ClassLoadingRecord record, Throwable throwable){
+		this.failureCount.increment();
+
+		addTimes(record);
+	}
+
+	@Override
+	public long getEncryptedLoadCount(){
+		return this.encryptedLoadCount.sum();
+	}
+
+	@Override
+	public long getPassThroughLoadCount(){
+		return this.passThroughLoadCount.sum();
+	}
+
+	@Override
+	public long getFailureCount(){
+		return this.failureCount.sum();
+	}
+
+	@Override
+	public long getDecryptedBytes(){
+		return this.decryptedBytes.sum();
+	}
+
+	@Override
+	public long getLookupTime(){
+		return getTime(Phase.LOOKUP);
+	}
+
+	@Override
+	public long getReadTime(){
+		return getTime(Phase.READ);
+	}
+
+	@Override
+	public long getKeyResolutionTime(){
+		return getTime(Phase.KEY_RESOLUTION);
+	}
+
+	@Override
+	public long getDecryptTime(){
+		return getTime(Phase.DECRYPT);
+	}
+
+	@Override
+	public long getDefineTime(){
+		return getTime(Phase.DEFINE);
+	}
+
+	public long getTime(Phase phase){
+		return this.times[phase.ordinal()].sum();
+	}
+
+	@Override
+	public long getSecretKeyCacheHitCount(){
+
+		if(this.keyRegistry != null){
+			SecretKeyCache secretKeyCache = this.keyRegistry.getSecretKeyCache();
+
+			return secretKeyCache.getHitCount();
+		}
+
+		return -1L;
+	}
+
+	@Override
+	public long getSecretKeyCacheMissCount(){
+
+		if(this.keyRegistry != null){
+			SecretKeyCache secretKeyCache = this.keyRegistry.getSecretKeyCache();
+
+			return secretKeyCache.getMissCount();
+		}
+
+		return -1L;
+	}
+
+	@Override
+	public void reset(){
+		this.encryptedLoadCount.reset();
+		this.passThroughLoadCount.reset();
+		this.failureCount.reset();
+		this.decryptedBytes.reset();
+
+		for(LongAdder time : this.times){
+			time.reset();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Registers this object with the platform MBean server.
+	 * </p>
+	 *
+	 * @param name The value of the <code>name</code> key property.
+	 */
+	public ObjectName register(String name) throws JMException {
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+		ObjectName objectName = new ObjectName("org.jpmml.codevault:type=ClassLoadingStatistics,name=" + ObjectName.quote(name));
+
+		mbeanServer.registerMBean(this, objectName);
+
+		return objectName;
+	}
+
+	private void addTimes(ClassLoadingRecord record){
+		Phase[] phases = Phase.values();
+
+		for(Phase phase : phases){
+			this.times[phase.ordinal()].add(record.getDuration(phase));
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+public interface ClassLoadingStatisticsMBean {
+
+	long getEncryptedLoadCount();
+
+	long getPassThroughLoadCount();
+
+	long getFailureCount();
+
+	long getDecryptedBytes();
+
+	long getLookupTime();
+
+	long getReadTime();
+
+	long getKeyResolutionTime();
+
+	long getDecryptTime();
+
+	long getDefineTime();
+
+	long getSecretKeyCacheHitCount();
+
+	long getSecretKeyCacheMissCount();
+
+	void reset();
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Files;
+
+/**
+ * <p>
+ * A Java agent that decrypts protected classes in place, without replacing the class loaders of the application.
+ * </p>
+ *
+ * The agent argument is a comma-separated list of secret key bindings:
+ * <pre>
+ * -javaagent:codevault-core.jar=&lt;secretKeyId&gt;=&lt;secretKeyFile&gt;[,&lt;secretKeyId&gt;=&lt;secretKeyFile&gt;]*
+ * </pre>
+ * Manifests are loaded from the system class loader.
+ *
+ * @see DecryptingClassFileTransformer
+ */
+public class CodeVaultAgent {
+
+	private CodeVaultAgent(){
+	}
+
+	static
+	public void premain(String args, Instrumentation instrumentation) throws IOException {
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		if(args != null){
+			String[] bindings = args.split(",");
+
+			for(String binding : bindings){
+				binding = binding.trim();
+
+				if(binding.isEmpty()){
+					continue;
+				}
+
+				int index = binding.indexOf('=');
+				if(index < 1){
+					throw new IllegalArgumentException("Invalid secret key binding " + binding);
+				}
+
+				File secretKeyFile = new File(binding.substring(index + 1));
+
+				keyRegistry.putEncodedKey(binding.substring(0, index), Files.readAllBytes(secretKeyFile.toPath()));
+			}
+		}
+
+		keyRegistry.load(ClassLoader.getSystemClassLoader());
+
+		// Compile eagerly, so that the transformer does not trigger class loading on the first protected class
+		keyRegistry.compile();
+
+		install(keyRegistry, instrumentation);
+	}
+
+	static
+	public void agentmain(String args, Instrumentation instrumentation) throws IOException {
+		premain(args, instrumentation);
+	}
+
+	static
+	public DecryptingClassFileTransformer install(KeyRegistry keyRegistry, Instrumentation instrumentation){
+		DecryptingClassFileTransformer transformer = new DecryptingClassFileTransformer(keyRegistry);
+
+		instrumentation.addTransformer(transformer, false);
+
+		return transformer;
+	}
+}
@@ -3,10 +3,23 @@
  */
 package org.jpmml.codevault;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.Key;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
 
 public class CodeVaultUtil {
 
@@ -15,17 +28,354 @@ public class CodeVaultUtil {
 
 	static
 	public byte[] encrypt(Key key, byte[] content) throws GeneralSecurityException {
-		Cipher cipher = Cipher.getInstance(key.getAlgorithm());
-		cipher.init(Cipher.ENCRYPT_MODE, key);
-
-		return cipher.doFinal(content);
+		return doFinal(Cipher.ENCRYPT_MODE, key, content);
 	}
 
 	static
 	public byte[] decrypt(Key key, byte[] content) throws GeneralSecurityException {
+		return doFinal(Cipher.DECRYPT_MODE, key, content);
+	}
+
+	/**
+	 * <p>
+	 * Encrypts the remaining content of a buffer.
+	 * </p>
+	 *
+	 * @return A buffer whose remaining content is the result.
+	 * If the input buffer is a writable heap buffer that has sufficient capacity, then it is overwritten in place.
+	 */
+	static
+	public ByteBuffer encrypt(Key key, ByteBuffer content) throws GeneralSecurityException {
+		return doFinal(Cipher.ENCRYPT_MODE, key, content);
+	}
+
+	/**
+	 * @see #encrypt(Key, ByteBuffer)
+	 */
+	static
+	public ByteBuffer decrypt(Key key, ByteBuffer content) throws GeneralSecurityException {
+		return doFinal(Cipher.DECRYPT_MODE, key, content);
+	}
+
+	static
+	public int encrypt(Key key, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+		return doFinal(Cipher.ENCRYPT_MODE, key, input, output);
+	}
+
+	static
+	public int decrypt(Key key, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+		return doFinal(Cipher.DECRYPT_MODE, key, input, output);
+	}
+
+	/**
+	 * <p>
+	 * Decrypts a stream incrementally.
+	 * </p>
+	 *
+	 * The returned stream owns a dedicated cipher, and may be consumed by any thread.
+	 */
+	static
+	public InputStream decrypt(Key key, InputStream is) throws GeneralSecurityException {
 		Cipher cipher = Cipher.getInstance(key.getAlgorithm());
 		cipher.init(Cipher.DECRYPT_MODE, key);
 
-		return cipher.doFinal(content);
+		return new CipherInputStream(is, cipher);
+	}
+
+	/**
+	 * <p>
+	 * Encrypts content using an explicit cipher transformation (eg. <code>AES/GCM/NoPadding</code> or <code>AES/CTR/NoPadding</code>).
+	 * </p>
+	 *
+	 * A fresh random IV is generated for every call, and is stored in front of the ciphertext.
+	 * The IV length is 12 bytes for GCM, and the cipher block size for other feedback modes.
+	 * ECB mode does not take an IV.
+	 */
+	static
+	public byte[] encrypt(String transformation, Key key, byte[] content) throws GeneralSecurityException {
+		int ivLength = getIvLength(transformation);
+
+		byte[] iv = new byte[ivLength];
+
+		if(ivLength > 0){
+			CodeVaultUtil.secureRandom.nextBytes(iv);
+		}
+
+		CipherCache cipherCache = CodeVaultUtil.cipherCache.get();
+
+		Cipher cipher = cipherCache.get(Cipher.ENCRYPT_MODE, transformation, key, createParameterSpec(transformation, iv));
+
+		byte[] result = new byte[ivLength + cipher.getOutputSize(content.length)];
+
+		System.arraycopy(iv, 0, result, 0, ivLength);
+
+		int length;
+
+		try {
+			length = ivLength + cipher.doFinal(content, 0, content.length, result, ivLength);
+		} catch(GeneralSecurityException | RuntimeException e){
+			cipherCache.discard(cipher);
+
+			throw e;
+		}
+
+		return (length == result.length ? result : Arrays.copyOf(result, length));
+	}
+
+	/**
+	 * <p>
+	 * Decrypts the remaining content of a buffer, whose IV has been stored in front of the ciphertext.
+	 * </p>
+	 *
+	 * @see #encrypt(String, Key, byte[])
+	 * @see #decrypt(Key, ByteBuffer)
+	 */
+	static
+	public ByteBuffer decrypt(String transformation, Key key, ByteBuffer content) throws GeneralSecurityException {
+		int ivLength = getIvLength(transformation);
+
+		if(content.remaining() < ivLength){
+			throw new GeneralSecurityException("Missing IV");
+		}
+
+		byte[] iv = new byte[ivLength];
+
+		content.get(iv);
+
+		CipherCache cipherCache = CodeVaultUtil.cipherCache.get();
+
+		Cipher cipher = cipherCache.get(Cipher.DECRYPT_MODE, transformation, key, createParameterSpec(transformation, iv));
+
+		return doFinal(cipherCache, cipher, content);
+	}
+
+	/**
+	 * <p>
+	 * Decrypts a stream incrementally, whose IV has been stored in front of the ciphertext.
+	 * </p>
+	 *
+	 * The returned stream owns a dedicated cipher, and may be consumed by any thread.
+	 */
+	static
+	public InputStream decrypt(String transformation, Key key, InputStream is) throws GeneralSecurityException, IOException {
+		byte[] iv = new byte[getIvLength(transformation)];
+
+		DataInputStream dis = new DataInputStream(is);
+		dis.readFully(iv);
+
+		Cipher cipher = Cipher.getInstance(transformation);
+		cipher.init(Cipher.DECRYPT_MODE, key, createParameterSpec(transformation, iv));
+
+		return new CipherInputStream(is, cipher);
+	}
+
+	/**
+	 * <p>
+	 * Decrypts the remaining content of a buffer according to the container format of the entry,
+	 * and decompresses it if necessary.
+	 * </p>
+	 *
+	 * @see #decrypt(Key, ByteBuffer)
+	 * @see ChunkedFormat#decrypt(Key, ByteBuffer, java.util.concurrent.Executor)
+	 */
+	static
+	public ByteBuffer decrypt(KeyDescriptor keyDescriptor, Key key, ByteBuffer content) throws GeneralSecurityException {
+		ByteBuffer result;
+
+		if(keyDescriptor.isChunked()){
+			result = ChunkedFormat.decrypt(key, content, null);
+		} else
+
+		if(keyDescriptor.getTransformation() != null){
+			result = decrypt(keyDescriptor.getTransformation(), key, content);
+		} else
+
+		{
+			result = decrypt(key, content);
+		} // End if
+
+		if(keyDescriptor.isCompressed()){
+			result = CompressionUtil.decompress(keyDescriptor.getCompression(), result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Decrypts a stream incrementally according to the container format of the entry,
+	 * and decompresses it if necessary.
+	 * </p>
+	 */
+	static
+	public InputStream decrypt(KeyDescriptor keyDescriptor, Key key, InputStream is) throws GeneralSecurityException, IOException {
+		InputStream result;
+
+		if(keyDescriptor.isChunked()){
+			result = new ChunkedInputStream(key, is);
+		} else
+
+		if(keyDescriptor.getTransformation() != null){
+			result = decrypt(keyDescriptor.getTransformation(), key, is);
+		} else
+
+		{
+			result = decrypt(key, is);
+		} // End if
+
+		if(keyDescriptor.isCompressed()){
+			result = CompressionUtil.decompress(keyDescriptor.getCompression(), result);
+		}
+
+		return result;
 	}
-}
\ No newline at end of file
+
+	static
+	private byte[] doFinal(int mode, Key key, byte[] content) throws GeneralSecurityException {
+		CipherCache cipherCache = CodeVaultUtil.cipherCache.get();
+
+		Cipher cipher = cipherCache.get(mode, key.getAlgorithm(), key);
+
+		try {
+			return cipher.doFinal(content);
+		} catch(GeneralSecurityException | RuntimeException e){
+			cipherCache.discard(cipher);
+
+			throw e;
+		}
+	}
+
+	static
+	private ByteBuffer doFinal(int mode, Key key, ByteBuffer content) throws GeneralSecurityException {
+		CipherCache cipherCache = CodeVaultUtil.cipherCache.get();
+
+		Cipher cipher = cipherCache.get(mode, key.getAlgorithm(), key);
+
+		return doFinal(cipherCache, cipher, content);
+	}
+
+	static
+	private ByteBuffer doFinal(CipherCache cipherCache, Cipher cipher, ByteBuffer content) throws GeneralSecurityException {
+		int outputSize = cipher.getOutputSize(content.remaining());
+
+		ByteBuffer result;
+
+		// Cipher operations on heap buffers are copy-safe.
+		// The output must fit into the input range, so that bytes past the limit, which belong to the caller, are left untouched
+		if(content.hasArray() && content.remaining() >= outputSize){
+			result = content.duplicate();
+		} else
+
+		{
+			result = ByteBuffer.allocate(outputSize);
+		}
+
+		int position = result.position();
+
+		try {
+			cipher.doFinal(content, result);
+		} catch(GeneralSecurityException | RuntimeException e){
+			cipherCache.discard(cipher);
+
+			throw e;
+		}
+
+		((Buffer)result).limit(result.position());
+		((Buffer)result).position(position);
+
+		return result;
+	}
+
+	static
+	private int doFinal(int mode, Key key, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+		CipherCache cipherCache = CodeVaultUtil.cipherCache.get();
+
+		Cipher cipher = cipherCache.get(mode, key.getAlgorithm(), key);
+
+		try {
+			return cipher.doFinal(input, output);
+		} catch(GeneralSecurityException | RuntimeException e){
+			cipherCache.discard(cipher);
+
+			throw e;
+		}
+	}
+
+	static
+	private int getIvLength(String transformation) throws GeneralSecurityException {
+		Integer result = CodeVaultUtil.ivLengths.get(transformation);
+
+		if(result == null){
+			String mode = getMode(transformation);
+
+			if(mode == null || ("ECB").equalsIgnoreCase(mode)){
+				result = 0;
+			} else
+
+			if(("GCM").equalsIgnoreCase(mode)){
+				result = GCM_IV_LENGTH;
+			} else
+
+			{
+				Cipher cipher = Cipher.getInstance(transformation);
+
+				result = cipher.getBlockSize();
+			}
+
+			CodeVaultUtil.ivLengths.put(transformation, result);
+		}
+
+		return result;
+	}
+
+	static
+	private AlgorithmParameterSpec createParameterSpec(String transformation, byte[] iv){
+
+		if(iv.length == 0){
+			return null;
+		}
+
+		String mode = getMode(transformation);
+
+		if(("GCM").equalsIgnoreCase(mode)){
+			return new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
+		}
+
+		return new IvParameterSpec(iv);
+	}
+
+	static
+	private String getMode(String transformation){
+		String[] parts = transformation.split("/");
+
+		return (parts.length > 1 ? parts[1] : null);
+	}
+
+	/**
+	 * <p>
+	 * Releases all ciphers that have been cached by the current thread.
+	 * </p>
+	 */
+	static
+	public void clearCipherCache(){
+		CodeVaultUtil.cipherCache.remove();
+	}
+
+	/**
+	 * @return The cipher cache of the current thread.
+	 */
+	static
+	CipherCache getCipherCache(){
+		return CodeVaultUtil.cipherCache.get();
+	}
+
+	private static final ThreadLocal<CipherCache> cipherCache = ThreadLocal.withInitial(() -> new CipherCache(8));
+
+	private static final ConcurrentMap<String, Integer> ivLengths = new ConcurrentHashMap<>();
+
+	private static final SecureRandom secureRandom = new SecureRandom();
+
+	private static final int GCM_IV_LENGTH = 12;
+
+	private static final int GCM_TAG_LENGTH = 16;
+}
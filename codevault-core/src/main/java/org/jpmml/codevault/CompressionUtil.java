@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <p>
+ * Compression of entry contents prior to encryption.
+ * </p>
+ *
+ * Encrypted content is incompressible, so it must be compressed before it is encrypted, and decompressed after it is decrypted.
+ */
+public class CompressionUtil {
+
+	private CompressionUtil(){
+	}
+
+	static
+	public byte[] compress(String compression, byte[] content) throws GeneralSecurityException {
+		checkCompression(compression);
+
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+		try {
+			deflater.setInput(content);
+			deflater.finish();
+
+			byte[] result = new byte[Math.max(64, content.length / 2)];
+
+			int length = 0;
+
+			while(!deflater.finished()){
+
+				if(length == result.length){
+					result = Arrays.copyOf(result, 2 * result.length);
+				}
+
+				length += deflater.deflate(result, length, result.length - length);
+			}
+
+			return Arrays.copyOf(result, length);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * @param content A heap buffer.
+	 */
+	static
+	public ByteBuffer decompress(String compression, ByteBuffer content) throws GeneralSecurityException {
+		checkCompression(compression);
+
+		if(!content.hasArray()){
+			ByteBuffer heapContent = ByteBuffer.allocate(content.remaining());
+			heapContent.put(content);
+			((Buffer)heapContent).flip();
+
+			content = heapContent;
+		}
+
+		Inflater inflater = new Inflater();
+
+		try {
+			inflater.setInput(content.array(), content.arrayOffset() + content.position(), content.remaining());
+
+			// Class files typically compress at a ratio of 2:1 to 3:1
+			byte[] result = new byte[Math.max(64, 3 * content.remaining())];
+
+			int length = 0;
+
+			while(!inflater.finished()){
+
+				if(length == result.length){
+					result = Arrays.copyOf(result, 2 * result.length);
+				}
+
+				int count = inflater.inflate(result, length, result.length - length);
+
+				if(count == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+					throw new GeneralSecurityException("Truncated compressed content");
+				}
+
+				length += count;
+			}
+
+			return ByteBuffer.wrap(result, 0, length);
+		} catch(DataFormatException dfe){
+			throw new GeneralSecurityException("Malformed compressed content", dfe);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	static
+	public InputStream decompress(String compression, InputStream is) throws GeneralSecurityException {
+		checkCompression(compression);
+
+		return new InflaterInputStream(is);
+	}
+
+	static
+	private void checkCompression(String compression) throws GeneralSecurityException {
+
+		if(!(DEFLATE).equalsIgnoreCase(compression)){
+			throw new GeneralSecurityException("Unsupported compression " + compression);
+		}
+	}
+
+	public static final String DEFLATE = "deflate";
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.ProtectionDomain;
+import java.util.Objects;
+
+import javax.crypto.SecretKey;
+
+/**
+ * <p>
+ * A class file transformer that decrypts protected classes while they are being defined by their own class loader.
+ * </p>
+ *
+ * Only classes that are stored as individual entries can be decrypted this way.
+ * Classes that are packed into a vault are not visible to other class loaders, and must be loaded using {@link DecryptingURLClassLoader}.
+ *
+ * @see CodeVaultAgent
+ */
+public class DecryptingClassFileTransformer implements ClassFileTransformer {
+
+	private KeyRegistry keyRegistry = null;
+
+
+	public DecryptingClassFileTransformer(KeyRegistry keyRegistry){
+		setKeyRegistry(keyRegistry);
+	}
+
+	/**
+	 * @param className The internal name of a class (eg. <code>com/example/Main</code>).
+	 *
+	 * @return The plaintext of the class, or <code>null</code> if the class is not protected.
+	 */
+	@Override
+	public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+
+		// Redefined and retransformed classes are already in plaintext
+		if(className == null || classBeingRedefined != null){
+			return null;
+		}
+
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		EntryOwnership ownership = keyRegistry.getOwnership();
+		if(ownership.isComplete() && !ownership.containsClass(className)){
+			return null;
+		}
+
+		String entryName = className + ".class";
+
+		KeyDescriptor keyDescriptor = keyRegistry.getKeyDescriptor(entryName);
+		if(!keyDescriptor.isEncrypted()){
+			return null;
+		}
+
+		ByteBuffer buffer;
+
+		try {
+			SecretKey secretKey = keyRegistry.getSecretKey(keyDescriptor, entryName);
+
+			// The class file buffer must not be modified
+			buffer = CodeVaultUtil.decrypt(keyDescriptor, secretKey, ByteBuffer.wrap(classfileBuffer.clone()));
+		} catch(GeneralSecurityException | IllegalArgumentException e){
+			IllegalClassFormatException icfe = new IllegalClassFormatException("Error decrypting class " + className);
+			icfe.initCause(e);
+
+			throw icfe;
+		}
+
+		if(buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == (buffer.array()).length){
+			return buffer.array();
+		}
+
+		byte[] result = new byte[buffer.remaining()];
+
+		buffer.get(result);
+
+		return result;
+	}
+
+	public KeyRegistry getKeyRegistry(){
+		return this.keyRegistry;
+	}
+
+	private void setKeyRegistry(KeyRegistry keyRegistry){
+		this.keyRegistry = Objects.requireNonNull(keyRegistry);
+	}
+}
@@ -3,14 +3,37 @@
  */
 package org.jpmml.codevault;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.security.GeneralSecurityException;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.jar.Attributes;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.crypto.SecretKey;
 
@@ -18,6 +41,28 @@ public class DecryptingURLClassLoader extends URLClassLoader {
 
 	private KeyRegistry keyRegistry = null;
 
+	private volatile List<Archive> archives = null;
+
+	private volatile Map<String, List<Archive>> packageArchives = null;
+
+	private volatile Map<String, Archive> locationArchives = null;
+
+	private List<Archive> retiredArchives = new ArrayList<>();
+
+	private volatile List<Vault> vaults = null;
+
+	private volatile EntryOwnership vaultOwnership = null;
+
+	private volatile Map<String, Vault> entryVaults = null;
+
+	private volatile Object vaultVersion = null;
+
+	private volatile StagingArea stagingArea = null;
+
+	private ConcurrentMap<String, ByteBuffer> preloadedClasses = new ConcurrentHashMap<>();
+
+	private List<ClassLoadingListener> listeners = new CopyOnWriteArrayList<>();
+
 
 	public DecryptingURLClassLoader(URL[] urls, KeyRegistry keyRegistry){
 		super(urls);
@@ -31,14 +76,40 @@ public class DecryptingURLClassLoader extends URLClassLoader {
 		setKeyRegistry(keyRegistry);
 	}
 
+	/**
+	 * <p>
+	 * Loads a class.
+	 * </p>
+	 *
+	 * If the ownership of the key registry is complete, then classes that it does not contain, and that are not contained in any vault,
+	 * are delegated to the parent class loader directly.
+	 * Otherwise, protected classes that are not on the class path of this class loader (eg. JDK classes that fall under a main descriptor)
+	 * are delegated to the parent class loader as well.
+	 */
 	@Override
 	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
 		KeyRegistry keyRegistry = getKeyRegistry();
 
+		EntryOwnership ownership = keyRegistry.getOwnership();
+		if(ownership.isComplete() && !ownership.containsClass(name) && !isVaultClass(name)){
+			return super.loadClass(name, resolve);
+		}
+
 		String entryName = toEntryName(name);
 
-		Attributes attributes = keyRegistry.getAttributes(entryName);
-		if(attributes != null && !attributes.isEmpty()){
+		KeyDescriptor keyDescriptor = keyRegistry.getKeyDescriptor(entryName);
+
+		boolean protectedEntry;
+
+		if(keyDescriptor.isEncrypted()){
+			protectedEntry = ownership.isComplete() || isVaultEntry(name, entryName) || isLocalEntry(name, entryName);
+		} else
+
+		{
+			protectedEntry = isVaultEntry(name, entryName);
+		} // End if
+
+		if(protectedEntry){
 
 			synchronized(getClassLoadingLock(name)){
 				Class<?> clazz = findLoadedClass(name);
@@ -60,66 +131,1307 @@ public class DecryptingURLClassLoader extends URLClassLoader {
 
 	@Override
 	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		List<ClassLoadingListener> listeners = this.listeners;
+
+		if(listeners.isEmpty()){
+			return findClass(name, ClassLoadingRecord.DISABLED);
+		}
+
+		ClassLoadingRecord record = new ClassLoadingRecord(name);
+
+		Class<?> clazz;
+
+		try {
+			clazz = findClass(name, record);
+		} catch(ClassNotFoundException | RuntimeException | Error e){
+			record.end();
+
+			for(ClassLoadingListener listener : listeners){
+				listener.classLoadFailed(record, e);
+			}
+
+			throw e;
+		}
+
+		record.end();
+
+		for(ClassLoadingListener listener : listeners){
+			listener.classLoaded(record);
+		}
+
+		return clazz;
+	}
+
+	private Class<?> findClass(String name, ClassLoadingRecord record) throws ClassNotFoundException {
 		KeyRegistry keyRegistry = getKeyRegistry();
 
 		String entryName = toEntryName(name);
 
-		URL url = getResource(entryName);
-		if(url == null){
-			throw new ClassNotFoundException(name);
+		record.begin(Phase.LOOKUP);
+
+		ByteBuffer stagedBuffer = this.preloadedClasses.remove(name);
+
+		if(stagedBuffer == null){
+			StagingArea stagingArea = this.stagingArea;
+
+			if(stagingArea != null){
+				stagedBuffer = stagingArea.take(name);
+			}
+		} // End if
+
+		if(stagedBuffer != null){
+			record.setEncrypted(true);
+			record.setSize(stagedBuffer.remaining());
+
+			record.begin(Phase.DEFINE);
+
+			return defineClass(name, stagedBuffer, (ProtectionDomain)null);
 		}
 
-		byte[] bytes;
+		Vault vault;
 
-		try(InputStream is = url.openStream()){
+		try {
+			vault = findVault(entryName);
+		} catch(IOException ioe){
+			throw new ClassNotFoundException(name, ioe);
+		}
 
-			try(ByteArrayOutputStream os = new ByteArrayOutputStream()){
-				byte[] buffer = new byte[1024];
+		if(vault != null){
+			record.setEncrypted(true);
 
-				while(true){
-					int count = is.read(buffer);
-					if(count < 0){
-						break;
-					}
+			record.begin(Phase.DECRYPT);
 
-					os.write(buffer, 0, count);
-				}
+			ByteBuffer buffer;
 
-				bytes = os.toByteArray();
+			try {
+				buffer = vault.read(entryName);
+			} catch(GeneralSecurityException gse){
+				throw new ClassNotFoundException(name, gse);
 			}
+
+			record.setSize(buffer.remaining());
+
+			record.begin(Phase.DEFINE);
+
+			return defineClass(name, buffer, (ProtectionDomain)null);
+		}
+
+		KeyDescriptor keyDescriptor = keyRegistry.getKeyDescriptor(entryName);
+
+		record.begin(Phase.READ);
+
+		ByteBuffer buffer;
+
+		try {
+			buffer = readEntry(entryName);
 		} catch(IOException ioe){
 			throw new ClassNotFoundException(name, ioe);
 		}
 
-		Attributes attributes = keyRegistry.getAttributes(entryName);
-		if(attributes != null && !attributes.isEmpty()){
-			SecretKey secretKey = keyRegistry.getSecretKey(attributes);
+		if(buffer == null){
+			throw new ClassNotFoundException(name);
+		} // End if
+
+		if(keyDescriptor.isEncrypted()){
+			record.setEncrypted(true);
+
+			record.begin(Phase.KEY_RESOLUTION);
+
+			SecretKey secretKey = keyRegistry.getSecretKey(keyDescriptor, entryName);
 
 			if(secretKey == null){
 				throw new ClassNotFoundException(name);
 			}
 
+			record.begin(Phase.DECRYPT);
+
 			try {
-				bytes = CodeVaultUtil.decrypt(secretKey, bytes);
+				buffer = CodeVaultUtil.decrypt(keyDescriptor, secretKey, buffer);
 			} catch(GeneralSecurityException gse){
 				throw new ClassNotFoundException(name, gse);
 			}
 		}
 
-		return defineClass(name, bytes, 0, bytes.length);
+		record.setSize(buffer.remaining());
+
+		record.begin(Phase.DEFINE);
+
+		return defineClass(name, buffer, (ProtectionDomain)null);
+	}
+
+	public CompletableFuture<Integer> warmUp(long capacity){
+		return warmUp(ForkJoinPool.commonPool(), capacity);
+	}
+
+	/**
+	 * <p>
+	 * Reads and decrypts all vault classes in parallel, and stages them for definition.
+	 * </p>
+	 *
+	 * The hot classes of every vault are staged first, in a single sequential pass per vault, so that the capacity is spent on the classes that are expected to load first.
+	 * A staged class is released when it is defined.
+	 * Classes that do not fit into the staging area, or that fail to decrypt, are left to be loaded lazily.
+	 *
+	 * All work, including the listing of entries and the prefetching of vaults, runs on the executor.
+	 * A new warm-up releases the classes that were staged by the previous one, and stages them again.
+	 *
+	 * @param executor The executor for list, read and decrypt tasks.
+	 * @param capacity The maximum total size of staged classes, in bytes.
+	 *
+	 * @return A future that yields the number of staged classes.
+	 */
+	public CompletableFuture<Integer> warmUp(Executor executor, long capacity){
+		StagingArea stagingArea = new StagingArea(capacity);
+
+		StagingArea prevStagingArea;
+
+		synchronized(this){
+			prevStagingArea = this.stagingArea;
+
+			this.stagingArea = stagingArea;
+		}
+
+		// Classes that were staged by a previous warm-up are staged again, within the new capacity
+		if(prevStagingArea != null){
+			prevStagingArea.clear();
+		}
+
+		CompletableFuture<List<String>> listFuture = CompletableFuture.supplyAsync(() -> {
+
+			try {
+				return listEncryptedClassEntries();
+			} catch(IOException ioe){
+				throw new CompletionException(ioe);
+			}
+		}, executor);
+
+		return listFuture.thenComposeAsync(entryNames -> {
+			int hotCount = stageHotClasses(stagingArea, prefetchVaults());
+
+			List<CompletableFuture<Boolean>> futures = new ArrayList<>(entryNames.size());
+
+			for(String entryName : entryNames){
+				CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> stage(stagingArea, entryName), executor);
+
+				futures.add(future);
+			}
+
+			return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+				.thenApply(ignored -> hotCount + (int)futures.stream().filter(CompletableFuture::join).count());
+		}, executor);
 	}
 
-	public KeyRegistry getKeyRegistry(){
-		return this.keyRegistry;
+	private List<Vault> prefetchVaults(){
+		List<Vault> vaults;
+
+		try {
+			vaults = getVaults();
+		} catch(IOException ioe){
+			return Collections.emptyList();
+		}
+
+		for(Vault vault : vaults){
+			vault.prefetch();
+		}
+
+		return vaults;
 	}
 
-	private void setKeyRegistry(KeyRegistry keyRegistry){
-		this.keyRegistry = Objects.requireNonNull(keyRegistry);
+	/**
+	 * @return The number of staged classes.
+	 *
+	 * @see Vault#readHot()
+	 */
+	private int stageHotClasses(StagingArea stagingArea, List<Vault> vaults){
+		int result = 0;
+
+		for(Vault vault : vaults){
+
+			if(vault.getHotCount() == 0){
+				continue;
+			}
+
+			Map<String, ByteBuffer> buffers;
+
+			try {
+				buffers = vault.readHot();
+			} catch(GeneralSecurityException | RuntimeException e){
+				// Left to be loaded lazily
+				continue;
+			}
+
+			Collection<Map.Entry<String, ByteBuffer>> entries = buffers.entrySet();
+			for(Map.Entry<String, ByteBuffer> entry : entries){
+				String entryName = entry.getKey();
+				ByteBuffer buffer = entry.getValue();
+
+				if(!isClassEntry(entryName)){
+					continue;
+				}
+
+				String name = toClassName(entryName);
+
+				try {
+					// Shadowed by an earlier vault
+					if(findVault(entryName) != vault){
+						continue;
+					}
+				} catch(IOException ioe){
+					continue;
+				}
+
+				if(findLoadedClass(name) != null || stagingArea.contains(name)){
+					continue;
+				}
+
+				int reservedSize = buffer.remaining();
+
+				if(stagingArea.reserve(reservedSize) && stagingArea.put(name, buffer, reservedSize)){
+					result++;
+				}
+			}
+		}
+
+		return result;
 	}
 
-	static
-	private String toEntryName(String name){
-		return name.replace('.', '/') + ".class";
+	private boolean stage(StagingArea stagingArea, String entryName){
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		String name = toClassName(entryName);
+
+		if(findLoadedClass(name) != null || stagingArea.contains(name)){
+			return false;
+		}
+
+		try {
+			Vault vault = findVault(entryName);
+
+			if(vault != null){
+				ByteBuffer buffer = vault.read(entryName);
+
+				int reservedSize = buffer.remaining();
+
+				if(!stagingArea.reserve(reservedSize) || !stagingArea.put(name, buffer, reservedSize)){
+					return false;
+				}
+			} else
+
+			{
+				KeyDescriptor keyDescriptor = keyRegistry.getKeyDescriptor(entryName);
+
+				SecretKey secretKey = keyRegistry.getSecretKey(keyDescriptor, entryName);
+				if(secretKey == null){
+					return false;
+				}
+
+				ByteBuffer buffer = readEntry(entryName);
+				if(buffer == null){
+					return false;
+				}
+
+				int reservedSize = buffer.remaining();
+
+				if(!stagingArea.reserve(reservedSize)){
+					return false;
+				}
+
+				try {
+					buffer = CodeVaultUtil.decrypt(keyDescriptor, secretKey, buffer);
+				} catch(GeneralSecurityException | RuntimeException e){
+					stagingArea.release(reservedSize);
+
+					return false;
+				}
+
+				if(!stagingArea.put(name, buffer, reservedSize)){
+					return false;
+				}
+			}
+		} catch(GeneralSecurityException | IOException | RuntimeException e){
+			return false;
+		}
+
+		// The class may have been defined in the meantime
+		if(findLoadedClass(name) != null){
+			stagingArea.take(name);
+
+			return false;
+		}
+
+		return true;
+	}
+
+	private List<String> listEncryptedClassEntries() throws IOException {
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		KeyIndex keyIndex = keyRegistry.getKeyIndex();
+
+		Set<String> result = new LinkedHashSet<>();
+
+		List<String> encryptedEntryNames = keyIndex.getEntryNames(KeyDescriptor::isEncrypted);
+		for(String entryName : encryptedEntryNames){
+
+			if(isClassEntry(entryName)){
+				result.add(entryName);
+			}
+		}
+
+		List<Vault> vaults = getVaults();
+		for(Vault vault : vaults){
+			List<String> entryNames = vault.list();
+
+			for(String entryName : entryNames){
+
+				if(isClassEntry(entryName)){
+					result.add(entryName);
+				}
+			}
+		}
+
+		KeyDescriptor mainDescriptor = keyIndex.getMainDescriptor();
+		if(mainDescriptor.isEncrypted() || keyIndex.hasPrefixRules()){
+			List<Archive> archives = getArchives();
+
+			if(archives != null){
+
+				for(Archive archive : archives){
+					List<String> entryNames = archive.list();
+
+					for(String entryName : entryNames){
+
+						if(isClassEntry(entryName) && (keyRegistry.getKeyDescriptor(entryName)).isEncrypted()){
+							result.add(entryName);
+						}
+					}
+				}
+			}
+		}
+
+		return new ArrayList<>(result);
+	}
+
+	public CompletableFuture<PreloadResult> preload(Collection<String> names){
+		return preload(ForkJoinPool.commonPool(), names);
+	}
+
+	/**
+	 * <p>
+	 * Loads the specified classes eagerly.
+	 * </p>
+	 *
+	 * <p>
+	 * Protected classes are read and decrypted in parallel.
+	 * They are then defined in an order where superclasses and superinterfaces come before their subtypes,
+	 * so that the definition of one class does not recurse into loading another.
+	 * Unprotected classes are loaded as usual.
+	 * </p>
+	 *
+	 * @param executor The executor for read and decrypt tasks.
+	 * @param names The binary names of classes.
+	 *
+	 * @return A future that yields the loaded classes, and the causes of failure for the rest.
+	 */
+	public CompletableFuture<PreloadResult> preload(Executor executor, Collection<String> names){
+		Map<String, CompletableFuture<ByteBuffer>> futures = new LinkedHashMap<>();
+
+		for(String name : names){
+
+			if(!futures.containsKey(name)){
+				CompletableFuture<ByteBuffer> future = CompletableFuture.supplyAsync(() -> readClass(name), executor);
+
+				futures.put(name, future);
+			}
+		}
+
+		return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()]))
+			// Failures are collected per class
+			.handle((ignored, throwable) -> defineClasses(futures));
+	}
+
+	public CompletableFuture<PreloadResult> preloadPackage(String prefix){
+		return preloadPackage(ForkJoinPool.commonPool(), prefix);
+	}
+
+	/**
+	 * <p>
+	 * Loads all protected classes in the specified package and its subpackages eagerly.
+	 * </p>
+	 *
+	 * @param prefix The name of a package (eg. <code>com.example</code>).
+	 *
+	 * @see #preload(Executor, Collection)
+	 */
+	public CompletableFuture<PreloadResult> preloadPackage(Executor executor, String prefix){
+		List<String> entryNames;
+
+		try {
+			entryNames = listEncryptedClassEntries();
+		} catch(IOException ioe){
+			CompletableFuture<PreloadResult> result = new CompletableFuture<>();
+			result.completeExceptionally(ioe);
+
+			return result;
+		}
+
+		String entryPrefix = prefix.replace('.', '/');
+
+		if(!entryPrefix.isEmpty() && !entryPrefix.endsWith("/")){
+			entryPrefix += "/";
+		}
+
+		List<String> names = new ArrayList<>();
+
+		for(String entryName : entryNames){
+
+			if(entryName.startsWith(entryPrefix)){
+				names.add(toClassName(entryName));
+			}
+		}
+
+		return preload(executor, names);
+	}
+
+	/**
+	 * @return The plaintext of a protected class, or <code>null</code> if the class is not protected or has already been loaded.
+	 */
+	private ByteBuffer readClass(String name){
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		if(findLoadedClass(name) != null){
+			return null;
+		}
+
+		String entryName = toEntryName(name);
+
+		try {
+			Vault vault = findVault(entryName);
+
+			if(vault != null){
+				return vault.read(entryName);
+			}
+
+			KeyDescriptor keyDescriptor = keyRegistry.getKeyDescriptor(entryName);
+			if(!keyDescriptor.isEncrypted()){
+				return null;
+			}
+
+			SecretKey secretKey = keyRegistry.getSecretKey(keyDescriptor, entryName);
+			if(secretKey == null){
+				throw new CompletionException(new ClassNotFoundException(name));
+			}
+
+			ByteBuffer buffer = readEntry(entryName);
+			if(buffer == null){
+				throw new CompletionException(new ClassNotFoundException(name));
+			}
+
+			return CodeVaultUtil.decrypt(keyDescriptor, secretKey, buffer);
+		} catch(GeneralSecurityException | IOException | IllegalArgumentException e){
+			throw new CompletionException(new ClassNotFoundException(name, e));
+		}
+	}
+
+	private PreloadResult defineClasses(Map<String, CompletableFuture<ByteBuffer>> futures){
+		PreloadResult result = new PreloadResult();
+
+		// A null value marks an unprotected class
+		Map<String, ByteBuffer> buffers = new LinkedHashMap<>();
+
+		Collection<Map.Entry<String, CompletableFuture<ByteBuffer>>> entries = futures.entrySet();
+		for(Map.Entry<String, CompletableFuture<ByteBuffer>> entry : entries){
+			String name = entry.getKey();
+			CompletableFuture<ByteBuffer> future = entry.getValue();
+
+			try {
+				buffers.put(name, future.join());
+			} catch(CompletionException ce){
+				result.addFailure(name, ce.getCause());
+			}
+		}
+
+		Set<String> visitedNames = new HashSet<>();
+
+		try {
+			for(String name : buffers.keySet()){
+				defineClass(name, buffers, visitedNames, result);
+			}
+		} finally {
+			// Classes that failed to define are left to be loaded lazily
+			for(String name : buffers.keySet()){
+				this.preloadedClasses.remove(name);
+			}
+		}
+
+		return result;
+	}
+
+	private void defineClass(String name, Map<String, ByteBuffer> buffers, Set<String> visitedNames, PreloadResult result){
+
+		if(!visitedNames.add(name)){
+			return;
+		}
+
+		ByteBuffer buffer = buffers.get(name);
+
+		if(buffer != null){
+			List<String> superTypes;
+
+			try {
+				superTypes = ClassFileUtil.getSuperTypes(buffer);
+			} catch(IllegalArgumentException iae){
+				result.addFailure(name, new ClassNotFoundException(name, iae));
+
+				return;
+			}
+
+			for(String superType : superTypes){
+
+				if(buffers.containsKey(superType)){
+					defineClass(superType, buffers, visitedNames, result);
+				}
+			}
+
+			this.preloadedClasses.put(name, buffer);
+		}
+
+		try {
+			Class<?> clazz = loadClass(name);
+
+			result.addClass(name, clazz);
+		} catch(ClassNotFoundException | LinkageError e){
+			result.addFailure(name, e);
+		}
+	}
+
+	@Override
+	public InputStream getResourceAsStream(String name){
+
+		try {
+			Vault vault = findVault(name);
+
+			if(vault != null){
+				ByteBuffer buffer = vault.read(name);
+
+				return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			}
+		} catch(GeneralSecurityException | IOException e){
+			return null;
+		}
+
+		KeyDescriptor keyDescriptor = getResourceKeyDescriptor(name);
+
+		if(keyDescriptor.isEncrypted()){
+
+			try {
+				List<Archive> archives = findArchives(name);
+
+				if(archives != null){
+
+					for(Archive archive : archives){
+						InputStream is = archive.openStream(name);
+
+						if(is != null){
+							return decryptResource(is, name, keyDescriptor);
+						}
+					}
+				}
+			} catch(IOException ioe){
+				return null;
+			}
+		}
+
+		return super.getResourceAsStream(name);
+	}
+
+	/**
+	 * <p>
+	 * Finds a resource.
+	 * </p>
+	 *
+	 * If the resource is protected, then its URL is wrapped so that reading from it yields the plaintext.
+	 * If the key registry knows the origins of the resource, then URLs that point to other class path elements are returned unchanged.
+	 *
+	 * @see KeyRegistry#getOrigins(String)
+	 */
+	@Override
+	public URL findResource(String name){
+		URL url = super.findResource(name);
+
+		if(url != null){
+			KeyDescriptor keyDescriptor = getResourceKeyDescriptor(name);
+
+			if(keyDescriptor.isEncrypted() && isProtected(url, name)){
+				url = decryptResource(url, name, keyDescriptor);
+			}
+		}
+
+		return url;
+	}
+
+	@Override
+	public Enumeration<URL> findResources(String name) throws IOException {
+		Enumeration<URL> urls = super.findResources(name);
+
+		KeyDescriptor keyDescriptor = getResourceKeyDescriptor(name);
+
+		if(keyDescriptor.isEncrypted()){
+			List<URL> result = new ArrayList<>();
+
+			while(urls.hasMoreElements()){
+				URL url = urls.nextElement();
+
+				if(isProtected(url, name)){
+					url = decryptResource(url, name, keyDescriptor);
+				}
+
+				result.add(url);
+			}
+
+			return Collections.enumeration(result);
+		}
+
+		return urls;
+	}
+
+	/**
+	 * @param url The URL of a resource.
+	 *
+	 * @return <code>true</code> if the resource is located in one of its origins, or if its origins are not known.
+	 */
+	private boolean isProtected(URL url, String name){
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		List<URL> origins = keyRegistry.getOrigins(name);
+		if(origins.isEmpty()){
+			return true;
+		}
+
+		String location = url.toExternalForm();
+
+		for(URL origin : origins){
+			String originLocation = origin.toExternalForm();
+
+			// Directory or JAR file
+			if((location).equals(originLocation + name) || (location).equals("jar:" + originLocation + "!/" + name)){
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * <p>
+	 * Opens a seekable channel over the plaintext of a resource.
+	 * </p>
+	 *
+	 * Uncompressed resources in the chunked format are decrypted on demand, directly from a memory-mapped view of the entry when possible.
+	 * All other resources are decrypted and decompressed in full.
+	 *
+	 * @return A channel, or <code>null</code> if the resource could not be found.
+	 */
+	public SeekableByteChannel openChannel(String name) throws IOException {
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		KeyDescriptor keyDescriptor = getResourceKeyDescriptor(name);
+
+		ByteBuffer buffer = null;
+
+		List<Archive> archives = findArchives(name);
+		if(archives != null){
+
+			for(Archive archive : archives){
+				buffer = archive.map(name);
+
+				if(buffer != null){
+					break;
+				}
+			}
+		} // End if
+
+		if(buffer == null){
+			buffer = readEntry(name);
+		} // End if
+
+		if(buffer == null){
+			return null;
+		} // End if
+
+		if(keyDescriptor.isEncrypted()){
+
+			try {
+				SecretKey secretKey = keyRegistry.getSecretKey(keyDescriptor, name);
+
+				if(keyDescriptor.isChunked()){
+
+					// Compressed content is not seekable
+					if(!keyDescriptor.isCompressed()){
+						return new ChunkedChannel(secretKey, buffer);
+					}
+				} else
+
+				{
+					if(buffer.isReadOnly()){
+						ByteBuffer writableBuffer = ByteBuffer.allocate(buffer.remaining());
+						writableBuffer.put(buffer);
+						((Buffer)writableBuffer).flip();
+
+						buffer = writableBuffer;
+					}
+				}
+
+				buffer = CodeVaultUtil.decrypt(keyDescriptor, secretKey, buffer);
+			} catch(GeneralSecurityException | IllegalArgumentException e){
+				throw new IOException(e);
+			}
+		}
+
+		return new ByteBufferChannel(buffer);
+	}
+
+	private KeyDescriptor getResourceKeyDescriptor(String name){
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		KeyIndex keyIndex = keyRegistry.getKeyIndex();
+
+		EntryOwnership ownership = keyRegistry.getOwnership();
+		if(ownership.isComplete()){
+			return (ownership.containsEntry(name) ? keyIndex.getKeyDescriptor(name) : KeyDescriptor.NONE);
+		}
+
+		KeyDescriptor keyDescriptor = keyIndex.getKeyDescriptor(name);
+
+		// Archive-level protection does not extend to metadata
+		if(keyDescriptor.isEncrypted() && name.startsWith("META-INF/")){
+			KeyDescriptor ruleDescriptor = keyIndex.getRuleDescriptor(name);
+
+			return (ruleDescriptor != null ? ruleDescriptor : KeyDescriptor.NONE);
+		}
+
+		return keyDescriptor;
+	}
+
+	private InputStream decryptResource(InputStream is, String name, KeyDescriptor keyDescriptor) throws IOException {
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		try {
+			SecretKey secretKey = keyRegistry.getSecretKey(keyDescriptor, name);
+
+			return CodeVaultUtil.decrypt(keyDescriptor, secretKey, is);
+		} catch(GeneralSecurityException | IllegalArgumentException e){
+			is.close();
+
+			throw new IOException(e);
+		} catch(IOException ioe){
+			is.close();
+
+			throw ioe;
+		}
+	}
+
+	private URL decryptResource(URL url, String name, KeyDescriptor keyDescriptor){
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		try {
+			return DecryptingURLStreamHandler.wrap(url, keyRegistry, name, keyDescriptor);
+		} catch(IOException ioe){
+			throw new IllegalArgumentException(ioe);
+		}
+	}
+
+	private boolean isVaultEntry(String name, String entryName) throws ClassNotFoundException {
+
+		try {
+			return findVault(entryName) != null;
+		} catch(IOException ioe){
+			throw new ClassNotFoundException(name, ioe);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the class path of this class loader contains the entry, <code>false</code> otherwise.
+	 */
+	private boolean isLocalEntry(String name, String entryName) throws ClassNotFoundException {
+
+		try {
+			List<Archive> archives = findArchives(entryName);
+
+			if(archives != null){
+
+				for(Archive archive : archives){
+
+					if(archive.contains(entryName)){
+						return true;
+					}
+				}
+
+				return false;
+			}
+		} catch(IOException ioe){
+			throw new ClassNotFoundException(name, ioe);
+		}
+
+		return super.findResource(entryName) != null;
+	}
+
+	private boolean isVaultClass(String name) throws ClassNotFoundException {
+		List<Vault> vaults;
+
+		try {
+			vaults = getVaults();
+		} catch(IOException ioe){
+			throw new ClassNotFoundException(name, ioe);
+		}
+
+		if(vaults.isEmpty()){
+			return false;
+		}
+
+		EntryOwnership vaultOwnership = this.vaultOwnership;
+
+		return (vaultOwnership == null || vaultOwnership.containsClass(name));
+	}
+
+	private Vault findVault(String entryName) throws IOException {
+		List<Vault> vaults = getVaults();
+
+		if(vaults.isEmpty()){
+			return null;
+		}
+
+		Map<String, Vault> entryVaults = this.entryVaults;
+		if(entryVaults != null){
+			return entryVaults.get(entryName);
+		}
+
+		for(Vault vault : vaults){
+
+			if(vault.contains(entryName)){
+				return vault;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * <p>
+	 * Gets the list of vaults, opening them on first use.
+	 * </p>
+	 *
+	 * Vaults are opened again when the key registry changes, so that vaults whose secret key is provisioned late are picked up, and rotated secret keys take effect.
+	 *
+	 * @return A list of vaults. Vaults whose secret key is not available are skipped.
+	 */
+	private List<Vault> getVaults() throws IOException {
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		Object version = keyRegistry.getVersion();
+
+		List<Vault> vaults = this.vaults;
+
+		if(isStale(vaults, version)){
+
+			synchronized(this){
+				vaults = this.vaults;
+
+				if(isStale(vaults, version)){
+					vaults = openVaults();
+
+					// The first vault in class path order takes precedence
+					Map<String, Vault> entryVaults = new HashMap<>();
+
+					for(Vault vault : vaults){
+						List<String> entryNames = vault.list();
+
+						for(String entryName : entryNames){
+							entryVaults.putIfAbsent(entryName, vault);
+						}
+					}
+
+					// Published before the list of vaults
+					this.vaultOwnership = EntryOwnership.build(entryVaults.keySet(), true);
+					this.entryVaults = entryVaults;
+					this.vaultVersion = version;
+					this.vaults = vaults;
+				}
+			}
+		}
+
+		return vaults;
+	}
+
+	private boolean isStale(List<Vault> vaults, Object version){
+
+		if(vaults == null){
+			return true;
+		}
+
+		Object vaultVersion = this.vaultVersion;
+
+		// A closed class loader has no vaults, regardless of the key registry
+		return (vaultVersion != null) && (vaultVersion != version);
+	}
+
+	private List<Vault> openVaults() throws IOException {
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		KeyIndex keyIndex = keyRegistry.getKeyIndex();
+
+		List<Vault> result = new ArrayList<>();
+
+		List<String> vaultEntryNames = keyIndex.getEntryNames(KeyDescriptor::isVault);
+		for(String entryName : vaultEntryNames){
+			KeyDescriptor keyDescriptor = keyIndex.getKeyDescriptor(entryName);
+
+			SecretKey secretKey;
+
+			try {
+				secretKey = keyRegistry.getSecretKey(keyDescriptor, entryName);
+			} catch(IllegalArgumentException iae){
+				continue;
+			}
+
+			if(secretKey == null){
+				continue;
+			}
+
+			List<ByteBuffer> buffers = mapEntries(entryName);
+			for(ByteBuffer buffer : buffers){
+
+				try {
+					result.add(new Vault(secretKey, buffer, keyDescriptor.getCompression()));
+				} catch(GeneralSecurityException gse){
+					throw new IOException("Error opening vault " + entryName, gse);
+				}
+			}
+		}
+
+		return result.isEmpty() ? Collections.emptyList() : result;
+	}
+
+	/**
+	 * @return The contents of the entry in all class path elements, in class path order.
+	 */
+	private List<ByteBuffer> mapEntries(String entryName) throws IOException {
+		List<ByteBuffer> result = new ArrayList<>();
+
+		List<Archive> archives = findArchives(entryName);
+		if(archives != null){
+
+			for(Archive archive : archives){
+				ByteBuffer buffer = archive.map(entryName);
+
+				if(buffer != null){
+					result.add(buffer);
+				}
+			}
+
+			return result;
+		}
+
+		Enumeration<URL> urls = super.findResources(entryName);
+		while(urls.hasMoreElements()){
+			URL url = urls.nextElement();
+
+			URLConnection connection = url.openConnection();
+
+			try(InputStream is = connection.getInputStream()){
+				result.add(IOUtil.readFully(is, connection.getContentLengthLong()));
+			}
+		}
+
+		return result;
+	}
+
+	@Override
+	protected void addURL(URL url){
+		super.addURL(url);
+
+		synchronized(this){
+			List<Archive> archives = resetArchives(null);
+
+			// Other threads may still be reading from them
+			if(archives != null){
+				this.retiredArchives.addAll(archives);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		StagingArea stagingArea = this.stagingArea;
+		if(stagingArea != null){
+			stagingArea.clear();
+		}
+
+		this.preloadedClasses.clear();
+
+		try {
+			synchronized(this){
+				List<Archive> archives = resetArchives(Collections.emptyList());
+
+				if(archives != null){
+					closeArchives(archives);
+				}
+
+				closeArchives(this.retiredArchives);
+
+				this.retiredArchives.clear();
+			}
+		} finally {
+			super.close();
+		}
+	}
+
+	private ByteBuffer readEntry(String entryName) throws IOException {
+		List<Archive> archives = findArchives(entryName);
+
+		if(archives != null){
+
+			for(Archive archive : archives){
+				ByteBuffer buffer = archive.read(entryName);
+
+				if(buffer != null){
+					return buffer;
+				}
+			}
+		}
+
+		URL url = super.findResource(entryName);
+		if(url == null){
+			url = getResource(entryName);
+		} // End if
+
+		if(url == null){
+			return null;
+		}
+
+		URLConnection connection = url.openConnection();
+
+		try(InputStream is = connection.getInputStream()){
+			return IOUtil.readFully(is, connection.getContentLengthLong());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Finds the archives that may contain an entry.
+	 * </p>
+	 *
+	 * If the key registry knows the origins of the entry, then the archives at those locations are returned.
+	 * Otherwise, the archives that contain the package directory of the entry are returned.
+	 *
+	 * @return A list of archives, in class path order, or <code>null</code> if some URL cannot be accessed directly.
+	 *
+	 * @see KeyRegistry#getOrigins(String)
+	 */
+	private List<Archive> findArchives(String name) throws IOException {
+		KeyRegistry keyRegistry = getKeyRegistry();
+
+		List<Archive> archives = getArchives();
+		if(archives == null){
+			return null;
+		}
+
+		Map<String, List<Archive>> packageArchives = this.packageArchives;
+		Map<String, Archive> locationArchives = this.locationArchives;
+
+		// Closed concurrently
+		if(packageArchives == null || locationArchives == null){
+			return archives;
+		}
+
+		List<URL> origins = keyRegistry.getOrigins(name);
+		if(!origins.isEmpty()){
+			List<Archive> result = new ArrayList<>(origins.size());
+
+			for(URL origin : origins){
+				Archive archive = locationArchives.get(origin.toExternalForm());
+
+				if(archive != null){
+					result.add(archive);
+				}
+			}
+
+			if(result.size() == origins.size()){
+				return result;
+			}
+		}
+
+		List<Archive> result = packageArchives.get(getPackageName(name));
+
+		return (result != null ? result : Collections.emptyList());
+	}
+
+	/**
+	 * <p>
+	 * Gets the list of archives, opening and indexing them on first use.
+	 * </p>
+	 *
+	 * The index maps every package directory to the archives that contain it, similar to the <code>META-INF/INDEX.LIST</code> file of the JAR file specification.
+	 *
+	 * @return A list of archives, or <code>null</code> if some URL cannot be accessed directly.
+	 */
+	private List<Archive> getArchives() throws IOException {
+		List<Archive> archives = this.archives;
+
+		if(archives == null){
+
+			synchronized(this){
+				archives = this.archives;
+
+				if(archives == null){
+					archives = openArchives();
+
+					Map<String, List<Archive>> packageArchives = new HashMap<>();
+					Map<String, Archive> locationArchives = new HashMap<>();
+
+					for(Archive archive : archives){
+						List<String> names = archive.list();
+
+						for(String name : names){
+							List<Archive> nameArchives = packageArchives.computeIfAbsent(getPackageName(name), key -> new ArrayList<>(1));
+
+							if(nameArchives.isEmpty() || nameArchives.get(nameArchives.size() - 1) != archive){
+								nameArchives.add(archive);
+							}
+						}
+
+						locationArchives.putIfAbsent((archive.getURL()).toExternalForm(), archive);
+					}
+
+					// Published before the list of archives
+					this.packageArchives = packageArchives;
+					this.locationArchives = locationArchives;
+					this.archives = archives;
+				}
+			}
+		}
+
+		return archives.isEmpty() ? null : archives;
+	}
+
+	/**
+	 * <p>
+	 * Opens an archive for every URL.
+	 * </p>
+	 *
+	 * Archives that were retired by {@link #addURL(URL)} are reused.
+	 */
+	private List<Archive> openArchives() throws IOException {
+		List<Archive> archives = new ArrayList<>();
+
+		URL[] urls = getURLs();
+		for(URL url : urls){
+			Archive archive = reuseArchive(url);
+
+			if(archive == null){
+				archive = Archive.open(url);
+			} // End if
+
+			if(archive == null){
+				this.retiredArchives.addAll(archives);
+
+				return Collections.emptyList();
+			}
+
+			archives.add(archive);
+		}
+
+		return archives;
+	}
+
+	private Archive reuseArchive(URL url){
+		Iterator<Archive> it = this.retiredArchives.iterator();
+
+		while(it.hasNext()){
+			Archive archive = it.next();
+
+			if(((archive.getURL()).toExternalForm()).equals(url.toExternalForm())){
+				it.remove();
+
+				return archive;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * <p>
+	 * Replaces the list of archives, and discards all information that was derived from it.
+	 * </p>
+	 *
+	 * @return The replaced list of archives, or <code>null</code>.
+	 * The archives are not closed.
+	 */
+	private List<Archive> resetArchives(List<Archive> replacement){
+		List<Archive> archives = this.archives;
+
+		this.archives = replacement;
+		this.packageArchives = null;
+		this.locationArchives = null;
+		this.vaults = (replacement != null ? Collections.emptyList() : null);
+		this.vaultOwnership = null;
+		this.entryVaults = null;
+		this.vaultVersion = null;
+
+		return archives;
+	}
+
+	static
+	private void closeArchives(List<Archive> archives){
+
+		for(Archive archive : archives){
+
+			try {
+				archive.close();
+			} catch(IOException ioe){
+				// Ignored
+			}
+		}
+	}
+
+	public void addClassLoadingListener(ClassLoadingListener listener){
+		this.listeners.add(Objects.requireNonNull(listener));
+	}
+
+	public void removeClassLoadingListener(ClassLoadingListener listener){
+		this.listeners.remove(listener);
+	}
+
+	public KeyRegistry getKeyRegistry(){
+		return this.keyRegistry;
+	}
+
+	private void setKeyRegistry(KeyRegistry keyRegistry){
+		this.keyRegistry = Objects.requireNonNull(keyRegistry);
+	}
+
+	static
+	private String toEntryName(String name){
+		return name.replace('.', '/') + ".class";
+	}
+
+	static
+	private String toClassName(String entryName){
+		return (entryName.substring(0, entryName.length() - ".class".length())).replace('/', '.');
+	}
+
+	/**
+	 * @return The package directory of the entry (eg. <code>com/example/</code>), or an empty string for the root directory.
+	 */
+	static
+	private String getPackageName(String entryName){
+		return entryName.substring(0, entryName.lastIndexOf('/') + 1);
+	}
+
+	static
+	private boolean isClassEntry(String entryName){
+		return entryName.endsWith(".class") && !entryName.startsWith("META-INF/") && !entryName.endsWith("module-info.class");
 	}
 
 	static {
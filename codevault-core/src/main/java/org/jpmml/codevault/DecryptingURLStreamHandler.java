@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+/**
+ * <p>
+ * A stream handler for resource URLs whose content is decrypted on the fly.
+ * </p>
+ */
+class DecryptingURLStreamHandler extends URLStreamHandler {
+
+	private URL url = null;
+
+	private KeyRegistry keyRegistry = null;
+
+	private String name = null;
+
+	private KeyDescriptor keyDescriptor = null;
+
+
+	DecryptingURLStreamHandler(URL url, KeyRegistry keyRegistry, String name, KeyDescriptor keyDescriptor){
+		this.url = url;
+		this.keyRegistry = keyRegistry;
+		this.name = name;
+		this.keyDescriptor = keyDescriptor;
+	}
+
+	@Override
+	protected URLConnection openConnection(URL url) throws IOException {
+		URLConnection connection = (this.url).openConnection();
+
+		return new URLConnection(url){
+
+			@Override
+			public void connect() throws IOException {
+				connection.connect();
+
+				this.connected = true;
+			}
+
+			@Override
+			public InputStream getInputStream() throws IOException {
+				Key key;
+
+				try {
+					key = keyRegistry.getSecretKey(keyDescriptor, name);
+				} catch(IllegalArgumentException iae){
+					throw new IOException("Secret key " + keyDescriptor.getSecretKeyId() + " is not available", iae);
+				}
+
+				InputStream is = connection.getInputStream();
+
+				try {
+					return CodeVaultUtil.decrypt(keyDescriptor, key, is);
+				} catch(GeneralSecurityException gse){
+					is.close();
+
+					throw new IOException(gse);
+				} catch(IOException ioe){
+					is.close();
+
+					throw ioe;
+				}
+			}
+
+			@Override
+			public long getLastModified(){
+				return connection.getLastModified();
+			}
+		};
+	}
+
+	static
+	public URL wrap(URL url, KeyRegistry keyRegistry, String name, KeyDescriptor keyDescriptor) throws IOException {
+		return new URL(null, url.toExternalForm(), new DecryptingURLStreamHandler(url, keyRegistry, name, keyDescriptor));
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class DirectoryArchive extends Archive {
+
+	private File directory = null;
+
+
+	DirectoryArchive(URL url, File directory){
+		super(url);
+
+		this.directory = directory;
+	}
+
+	@Override
+	public boolean contains(String name){
+		File file = getFile(name);
+
+		return file.isFile();
+	}
+
+	@Override
+	public ByteBuffer read(String name) throws IOException {
+		File file = getFile(name);
+
+		if(!file.isFile()){
+			return null;
+		}
+
+		try(InputStream is = Files.newInputStream(file.toPath())){
+			return IOUtil.readFully(is, file.length());
+		}
+	}
+
+	@Override
+	public ByteBuffer map(String name) throws IOException {
+		File file = getFile(name);
+
+		if(!file.isFile()){
+			return null;
+		}
+
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+			long size = channel.size();
+
+			if(size > Integer.MAX_VALUE){
+				throw new IOException("File size " + size + " exceeds the maximum buffer size");
+			}
+
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
+	@Override
+	public InputStream openStream(String name) throws IOException {
+		File file = getFile(name);
+
+		if(!file.isFile()){
+			return null;
+		}
+
+		return Files.newInputStream(file.toPath());
+	}
+
+	@Override
+	public List<String> list() throws IOException {
+		Path directory = (this.directory).toPath();
+
+		if(!Files.isDirectory(directory)){
+			return Collections.emptyList();
+		}
+
+		try(Stream<Path> paths = Files.walk(directory)){
+			return paths
+				.filter(Files::isRegularFile)
+				.map(path -> ((directory.relativize(path)).toString()).replace(File.separatorChar, '/'))
+				.collect(Collectors.toList());
+		}
+	}
+
+	@Override
+	public void close(){
+	}
+
+	public File getDirectory(){
+		return this.directory;
+	}
+
+	private File getFile(String name){
+		return new File(this.directory, name.replace('/', File.separatorChar));
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * <p>
+ * An immutable set of protected entry names.
+ * </p>
+ *
+ * <p>
+ * Membership is tested using a Bloom filter, which rejects the vast majority of non-members with a couple of memory reads,
+ * and then confirmed using a binary search over a sorted array.
+ * Queries do not allocate, and do not lock.
+ * </p>
+ *
+ * An incomplete set does not know about all protected entries, and must not be used for rejecting names.
+ */
+public class EntryOwnership {
+
+	private String[] names = null;
+
+	private long[] bits = null;
+
+	private int mask = 0;
+
+	private boolean complete = false;
+
+
+	private EntryOwnership(String[] names, boolean complete){
+		this.names = names;
+		this.complete = complete;
+
+		int size = Math.max(64, Integer.highestOneBit(Math.max(1, names.length * BITS_PER_NAME) - 1) << 1);
+
+		this.bits = new long[size / 64];
+		this.mask = size - 1;
+
+		for(String name : names){
+			int hash = name.hashCode();
+
+			for(int i = 0, probe = hash, step = mix(hash); i < PROBES; i++, probe += step){
+				int bit = probe & this.mask;
+
+				this.bits[bit >>> 6] |= (1L << bit);
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if this set knows about all protected entries, <code>false</code> otherwise.
+	 */
+	public boolean isComplete(){
+		return this.complete;
+	}
+
+	public int size(){
+		return this.names.length;
+	}
+
+	public boolean containsEntry(String entryName){
+
+		if(!mightContain(entryName.hashCode())){
+			return false;
+		}
+
+		return Arrays.binarySearch(this.names, entryName) > -1;
+	}
+
+	/**
+	 * <p>
+	 * Tests the class file entry of a class, without converting the class name to an entry name.
+	 * </p>
+	 *
+	 * @param className The binary name of a class (eg. <code>com.example.Main</code>).
+	 */
+	public boolean containsClass(String className){
+
+		if(!mightContain(classEntryHashCode(className))){
+			return false;
+		}
+
+		String[] names = this.names;
+
+		int low = 0;
+		int high = names.length - 1;
+
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+
+			int order = compareClassEntry(names[mid], className);
+
+			if(order < 0){
+				low = mid + 1;
+			} else
+
+			if(order > 0){
+				high = mid - 1;
+			} else
+
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private boolean mightContain(int hash){
+
+		for(int i = 0, probe = hash, step = mix(hash); i < PROBES; i++, probe += step){
+			int bit = probe & this.mask;
+
+			if((this.bits[bit >>> 6] & (1L << bit)) == 0){
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	static
+	public EntryOwnership build(Collection<String> names, boolean complete){
+		String[] result = names.stream()
+			.distinct()
+			.sorted()
+			.toArray(String[]::new);
+
+		return new EntryOwnership(result, complete);
+	}
+
+	/**
+	 * @return The value of <code>(className.replace('.', '/') + ".class").hashCode()</code>.
+	 */
+	static
+	private int classEntryHashCode(String className){
+		int result = 0;
+
+		for(int i = 0, length = className.length(); i < length; i++){
+			char c = className.charAt(i);
+
+			result = 31 * result + (c == '.' ? '/' : c);
+		}
+
+		for(int i = 0; i < CLASS_SUFFIX.length(); i++){
+			result = 31 * result + CLASS_SUFFIX.charAt(i);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The value of <code>entryName.compareTo(className.replace('.', '/') + ".class")</code>.
+	 */
+	static
+	private int compareClassEntry(String entryName, String className){
+		int classNameLength = className.length();
+		int length = classNameLength + CLASS_SUFFIX.length();
+
+		int commonLength = Math.min(entryName.length(), length);
+
+		for(int i = 0; i < commonLength; i++){
+			char left = entryName.charAt(i);
+			char right;
+
+			if(i < classNameLength){
+				right = className.charAt(i);
+
+				if(right == '.'){
+					right = '/';
+				}
+			} else
+
+			{
+				right = CLASS_SUFFIX.charAt(i - classNameLength);
+			} // End if
+
+			if(left != right){
+				return left - right;
+			}
+		}
+
+		return entryName.length() - length;
+	}
+
+	static
+	private int mix(int hash){
+		hash *= 0x9E3779B9;
+
+		// The step must be odd in order to visit distinct bits
+		return (hash ^ (hash >>> 16)) | 1;
+	}
+
+	public static final EntryOwnership INCOMPLETE = new EntryOwnership(new String[0], false);
+
+	private static final String CLASS_SUFFIX = ".class";
+
+	private static final int BITS_PER_NAME = 10;
+
+	private static final int PROBES = 4;
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+class IOUtil {
+
+	private IOUtil(){
+	}
+
+	static
+	public ByteBuffer readFully(InputStream is, long size) throws IOException {
+
+		if(size > Integer.MAX_VALUE){
+			throw new IOException("Entry size " + size + " exceeds the maximum buffer size");
+		}
+
+		byte[] bytes = new byte[size >= 0 ? (int)size : 8192];
+
+		int length = 0;
+
+		while(true){
+
+			if(length == bytes.length){
+				int b = is.read();
+				if(b < 0){
+					break;
+				}
+
+				bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, 1024));
+				bytes[length++] = (byte)b;
+			}
+
+			int count = is.read(bytes, length, bytes.length - length);
+			if(count < 0){
+				break;
+			}
+
+			length += count;
+		}
+
+		return ByteBuffer.wrap(bytes, 0, length);
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+
+class JarArchive extends Archive {
+
+	private File file = null;
+
+	private JarFile jarFile = null;
+
+	private volatile StoredEntries storedEntries = null;
+
+
+	JarArchive(URL url, File file) throws IOException {
+		super(url);
+
+		this.file = file;
+		this.jarFile = new JarFile(file);
+	}
+
+	@Override
+	public boolean contains(String name){
+		JarFile jarFile = getJarFile();
+
+		JarEntry jarEntry = jarFile.getJarEntry(name);
+
+		return (jarEntry != null && !jarEntry.isDirectory());
+	}
+
+	@Override
+	public ByteBuffer read(String name) throws IOException {
+		JarFile jarFile = getJarFile();
+
+		JarEntry jarEntry = jarFile.getJarEntry(name);
+		if(jarEntry == null || jarEntry.isDirectory()){
+			return null;
+		}
+
+		try(InputStream is = jarFile.getInputStream(jarEntry)){
+			return IOUtil.readFully(is, jarEntry.getSize());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Stored (ie. uncompressed) entries are mapped into memory.
+	 * All other entries are read.
+	 * </p>
+	 */
+	@Override
+	public ByteBuffer map(String name) throws IOException {
+		JarFile jarFile = getJarFile();
+
+		JarEntry jarEntry = jarFile.getJarEntry(name);
+		if(jarEntry == null || jarEntry.isDirectory()){
+			return null;
+		} // End if
+
+		if(jarEntry.getMethod() == ZipEntry.STORED){
+			StoredEntries storedEntries = getStoredEntries();
+
+			ByteBuffer buffer = storedEntries.map(jarEntry.getName());
+			if(buffer != null){
+				return buffer;
+			}
+		}
+
+		ByteBuffer buffer = read(name);
+
+		return buffer.asReadOnlyBuffer();
+	}
+
+	@Override
+	public InputStream openStream(String name) throws IOException {
+		JarFile jarFile = getJarFile();
+
+		JarEntry jarEntry = jarFile.getJarEntry(name);
+		if(jarEntry == null || jarEntry.isDirectory()){
+			return null;
+		}
+
+		return jarFile.getInputStream(jarEntry);
+	}
+
+	@Override
+	public List<String> list(){
+		JarFile jarFile = getJarFile();
+
+		return jarFile.stream()
+			.filter(jarEntry -> !jarEntry.isDirectory())
+			.map(JarEntry::getName)
+			.collect(Collectors.toList());
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.storedEntries = null;
+
+		this.jarFile.close();
+	}
+
+	public File getFile(){
+		return this.file;
+	}
+
+	public JarFile getJarFile(){
+		return this.jarFile;
+	}
+
+	private StoredEntries getStoredEntries() throws IOException {
+		StoredEntries storedEntries = this.storedEntries;
+
+		if(storedEntries == null){
+
+			synchronized(this){
+				storedEntries = this.storedEntries;
+
+				if(storedEntries == null){
+					storedEntries = StoredEntries.load(this.file);
+
+					this.storedEntries = storedEntries;
+				}
+			}
+		}
+
+		return storedEntries;
+	}
+
+	/**
+	 * <p>
+	 * The data regions of stored entries, as found by parsing the central directory of a memory-mapped JAR file.
+	 * </p>
+	 *
+	 * ZIP64 archives are not supported.
+	 */
+	static
+	private class StoredEntries {
+
+		private ByteBuffer buffer = null;
+
+		private Map<String, long[]> regions = null;
+
+
+		private StoredEntries(ByteBuffer buffer, Map<String, long[]> regions){
+			this.buffer = buffer;
+			this.regions = regions;
+		}
+
+		public ByteBuffer map(String name){
+			long[] region = this.regions.get(name);
+
+			if(region == null){
+				return null;
+			}
+
+			ByteBuffer result = (this.buffer).duplicate();
+			result.order(ByteOrder.BIG_ENDIAN);
+			((Buffer)result).position((int)region[0]);
+			((Buffer)result).limit((int)(region[0] + region[1]));
+
+			return result.slice();
+		}
+
+		static
+		public StoredEntries load(File file) throws IOException {
+			MappedByteBuffer mappedBuffer;
+
+			try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+				long size = channel.size();
+
+				if(size > Integer.MAX_VALUE){
+					return new StoredEntries(null, Collections.emptyMap());
+				}
+
+				mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+
+			ByteBuffer buffer = mappedBuffer.asReadOnlyBuffer();
+
+			Map<String, long[]> regions = new HashMap<>();
+
+			try {
+				parseCentralDirectory(buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN), regions);
+			} catch(IndexOutOfBoundsException ioobe){
+				throw new IOException("Malformed central directory", ioobe);
+			}
+
+			return new StoredEntries(buffer, regions);
+		}
+
+		static
+		private void parseCentralDirectory(ByteBuffer buffer, Map<String, long[]> regions){
+			int limit = buffer.limit();
+
+			int endOffset = -1;
+
+			for(int i = limit - 22, min = Math.max(0, limit - 22 - 0xFFFF); i >= min; i--){
+
+				if(buffer.getInt(i) == 0x06054b50){
+					endOffset = i;
+
+					break;
+				}
+			}
+
+			if(endOffset < 0){
+				return;
+			}
+
+			int count = buffer.getShort(endOffset + 10) & 0xFFFF;
+			long offset = buffer.getInt(endOffset + 16) & 0xFFFFFFFFL;
+
+			if(offset == 0xFFFFFFFFL){
+				return;
+			}
+
+			int position = (int)offset;
+
+			for(int i = 0; i < count; i++){
+
+				if(buffer.getInt(position) != 0x02014b50){
+					break;
+				}
+
+				int method = buffer.getShort(position + 10) & 0xFFFF;
+				long compressedSize = buffer.getInt(position + 20) & 0xFFFFFFFFL;
+				int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+				int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+				int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+				long headerOffset = buffer.getInt(position + 42) & 0xFFFFFFFFL;
+
+				if(method == ZipEntry.STORED && compressedSize != 0xFFFFFFFFL && headerOffset != 0xFFFFFFFFL && buffer.getInt((int)headerOffset) == 0x04034b50){
+					byte[] nameBytes = new byte[nameLength];
+
+					ByteBuffer nameBuffer = buffer.duplicate();
+					((Buffer)nameBuffer).position(position + 46);
+					nameBuffer.get(nameBytes);
+
+					int localNameLength = buffer.getShort((int)headerOffset + 26) & 0xFFFF;
+					int localExtraLength = buffer.getShort((int)headerOffset + 28) & 0xFFFF;
+
+					long dataOffset = headerOffset + 30 + localNameLength + localExtraLength;
+
+					if(dataOffset + compressedSize <= limit){
+						regions.put(new String(nameBytes, StandardCharsets.UTF_8), new long[]{dataOffset, compressedSize});
+					}
+				}
+
+				position += (46 + nameLength + extraLength + commentLength);
+			}
+		}
+	}
+}
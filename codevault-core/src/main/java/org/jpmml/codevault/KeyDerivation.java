@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * <p>
+ * A scheme for deriving entry keys from a master key.
+ * </p>
+ *
+ * <p>
+ * The scheme is specified as <code>&lt;function&gt;/&lt;granularity&gt;</code> (eg. <code>HKDF-SHA256/PACKAGE</code>).
+ * The function is HKDF (RFC 5869), with an empty salt, the master key as input keying material,
+ * and the UTF-8 encoded derivation context as info.
+ * The derivation context is the directory part of the entry name (eg. <code>com/example/</code>) for the package granularity,
+ * and the entry name itself for the entry granularity.
+ * </p>
+ *
+ * The derived key has the same length as the master key.
+ */
+public class KeyDerivation {
+
+	private String function = null;
+
+	private String macAlgorithm = null;
+
+	private Granularity granularity = null;
+
+
+	private KeyDerivation(String function, String macAlgorithm, Granularity granularity){
+		this.function = Objects.requireNonNull(function);
+		this.macAlgorithm = Objects.requireNonNull(macAlgorithm);
+		this.granularity = Objects.requireNonNull(granularity);
+	}
+
+	public String getContext(String name){
+
+		switch(this.granularity){
+			case PACKAGE:
+				return name.substring(0, name.lastIndexOf('/') + 1);
+			case ENTRY:
+				return name;
+			default:
+				throw new IllegalArgumentException();
+		}
+	}
+
+	public byte[] derive(byte[] masterKey, String context){
+
+		try {
+			return hkdf(this.macAlgorithm, masterKey, null, context.getBytes(StandardCharsets.UTF_8), masterKey.length);
+		} catch(GeneralSecurityException gse){
+			throw new IllegalStateException(gse);
+		}
+	}
+
+	public String getFunction(){
+		return this.function;
+	}
+
+	public Granularity getGranularity(){
+		return this.granularity;
+	}
+
+	@Override
+	public String toString(){
+		return this.function + "/" + this.granularity.name();
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the scheme is not supported.
+	 */
+	static
+	public KeyDerivation valueOf(String value){
+		KeyDerivation result = KeyDerivation.keyDerivations.get(value);
+
+		if(result == null){
+			int index = value.indexOf('/');
+			if(index < 0){
+				throw new IllegalArgumentException("Invalid key derivation " + value);
+			}
+
+			String function = (value.substring(0, index)).toUpperCase();
+
+			String macAlgorithm;
+
+			switch(function){
+				case "HKDF-SHA256":
+					macAlgorithm = "HmacSHA256";
+					break;
+				case "HKDF-SHA512":
+					macAlgorithm = "HmacSHA512";
+					break;
+				default:
+					throw new IllegalArgumentException("Unsupported key derivation function " + function);
+			}
+
+			Granularity granularity = Granularity.valueOf((value.substring(index + 1)).toUpperCase());
+
+			result = new KeyDerivation(function, macAlgorithm, granularity);
+
+			KeyDerivation.keyDerivations.putIfAbsent(value, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param salt The salt, or <code>null</code> for an all-zero salt.
+	 */
+	static
+	public byte[] hkdf(String macAlgorithm, byte[] inputKey, byte[] salt, byte[] info, int length) throws GeneralSecurityException {
+		Mac mac = Mac.getInstance(macAlgorithm);
+
+		int macLength = mac.getMacLength();
+
+		if(length < 1 || length > (255 * macLength)){
+			throw new IllegalArgumentException("Invalid output length " + length);
+		} // End if
+
+		if(salt == null || salt.length == 0){
+			salt = new byte[macLength];
+		}
+
+		// Extract
+		mac.init(new SecretKeySpec(salt, macAlgorithm));
+
+		byte[] pseudoRandomKey = mac.doFinal(inputKey);
+
+		// Expand
+		mac.init(new SecretKeySpec(pseudoRandomKey, macAlgorithm));
+
+		byte[] result = new byte[length];
+
+		byte[] block = new byte[0];
+
+		for(int i = 0, offset = 0; offset < length; i++){
+			mac.update(block);
+			mac.update(info);
+			mac.update((byte)(i + 1));
+
+			block = mac.doFinal();
+
+			int count = Math.min(block.length, length - offset);
+
+			System.arraycopy(block, 0, result, offset, count);
+
+			offset += count;
+		}
+
+		return result;
+	}
+
+	static
+	public enum Granularity {
+		PACKAGE,
+		ENTRY,
+		;
+	}
+
+	private static final ConcurrentMap<String, KeyDerivation> keyDerivations = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.util.Objects;
+import java.util.jar.Attributes;
+
+public class KeyDescriptor {
+
+	private String algorithm = null;
+
+	private String secretKeyId = null;
+
+	private String format = null;
+
+	private String compression = null;
+
+	private String transformation = null;
+
+	private String keyDerivation = null;
+
+	private int hashCode = 0;
+
+
+	public KeyDescriptor(String algorithm, String secretKeyId, String format, String compression, String transformation, String keyDerivation){
+		this.algorithm = algorithm;
+		this.secretKeyId = secretKeyId;
+		this.format = format;
+		this.compression = compression;
+		this.transformation = transformation;
+		this.keyDerivation = keyDerivation;
+
+		// Computed once, as key descriptors are immutable and serve as cache keys
+		this.hashCode = Objects.hash(algorithm, secretKeyId, format, compression, transformation, keyDerivation);
+	}
+
+	public KeyDescriptor withFormat(String format){
+		return new KeyDescriptor(this.algorithm, this.secretKeyId, format, this.compression, this.transformation, this.keyDerivation);
+	}
+
+	public KeyDescriptor withCompression(String compression){
+		return new KeyDescriptor(this.algorithm, this.secretKeyId, this.format, compression, this.transformation, this.keyDerivation);
+	}
+
+	public KeyDescriptor withTransformation(String transformation){
+		return new KeyDescriptor(this.algorithm, this.secretKeyId, this.format, this.compression, transformation, this.keyDerivation);
+	}
+
+	public KeyDescriptor withKeyDerivation(String keyDerivation){
+		return new KeyDescriptor(this.algorithm, this.secretKeyId, this.format, this.compression, this.transformation, keyDerivation);
+	}
+
+	public boolean isEncrypted(){
+		return (this.algorithm != null) || (this.secretKeyId != null);
+	}
+
+	public Attributes toAttributes(){
+		Attributes result = new Attributes();
+
+		if(this.algorithm != null){
+			result.put(AttributeNames.CODEVAULT_ALGORITHM, this.algorithm);
+		} // End if
+
+		if(this.secretKeyId != null){
+			result.put(AttributeNames.CODEVAULT_SECRETKEY_ID, this.secretKeyId);
+		} // End if
+
+		if(this.format != null){
+			result.put(AttributeNames.CODEVAULT_FORMAT, this.format);
+		} // End if
+
+		if(this.compression != null){
+			result.put(AttributeNames.CODEVAULT_COMPRESSION, this.compression);
+		} // End if
+
+		if(this.transformation != null){
+			result.put(AttributeNames.CODEVAULT_TRANSFORMATION, this.transformation);
+		} // End if
+
+		if(this.keyDerivation != null){
+			result.put(AttributeNames.CODEVAULT_KEY_DERIVATION, this.keyDerivation);
+		}
+
+		return result;
+	}
+
+	public String getAlgorithm(){
+		return this.algorithm;
+	}
+
+	public String getSecretKeyId(){
+		return this.secretKeyId;
+	}
+
+	/**
+	 * @return The container format, or <code>null</code> for a single cipher block sequence.
+	 */
+	public String getFormat(){
+		return this.format;
+	}
+
+	/**
+	 * @return The compression that was applied before encryption, or <code>null</code>.
+	 */
+	public String getCompression(){
+		return this.compression;
+	}
+
+	public boolean isCompressed(){
+		return this.compression != null;
+	}
+
+	/**
+	 * @return The cipher transformation (eg. <code>AES/GCM/NoPadding</code>), or <code>null</code> for the provider default transformation of the algorithm.
+	 *
+	 * @see CodeVaultUtil#encrypt(String, java.security.Key, byte[])
+	 */
+	public String getTransformation(){
+		return this.transformation;
+	}
+
+	/**
+	 * @return The key derivation scheme, or <code>null</code> if the secret key is used as-is.
+	 *
+	 * @see KeyDerivation
+	 */
+	public String getKeyDerivation(){
+		return this.keyDerivation;
+	}
+
+	public boolean isDerived(){
+		return this.keyDerivation != null;
+	}
+
+	/**
+	 * @return The algorithm of the secret key.
+	 * Defaults to the algorithm component of the cipher transformation.
+	 */
+	public String getKeyAlgorithm(){
+
+		if(this.algorithm == null && this.transformation != null){
+			int index = this.transformation.indexOf('/');
+
+			return (index > -1 ? this.transformation.substring(0, index) : this.transformation);
+		}
+
+		return this.algorithm;
+	}
+
+	/**
+	 * @return <code>true</code> if the entry is a chunked container, <code>false</code> otherwise.
+	 *
+	 * @see ChunkedFormat
+	 */
+	public boolean isChunked(){
+		return (ChunkedFormat.FORMAT).equalsIgnoreCase(this.format) || isVault();
+	}
+
+	/**
+	 * @return <code>true</code> if the entry is a packed vault, <code>false</code> otherwise.
+	 *
+	 * @see Vault
+	 */
+	public boolean isVault(){
+		return (Vault.FORMAT).equalsIgnoreCase(this.format);
+	}
+
+	@Override
+	public int hashCode(){
+		return this.hashCode;
+	}
+
+	@Override
+	public boolean equals(Object object){
+
+		if(object == this){
+			return true;
+		} // End if
+
+		if(object instanceof KeyDescriptor){
+			KeyDescriptor that = (KeyDescriptor)object;
+
+			return (this.hashCode == that.hashCode) && Objects.equals(this.algorithm, that.algorithm) && Objects.equals(this.secretKeyId, that.secretKeyId) && Objects.equals(this.format, that.format) && Objects.equals(this.compression, that.compression) && Objects.equals(this.transformation, that.transformation) && Objects.equals(this.keyDerivation, that.keyDerivation);
+		}
+
+		return false;
+	}
+
+	@Override
+	public String toString(){
+		return "KeyDescriptor{algorithm=" + this.algorithm + ", secretKeyId=" + this.secretKeyId + ", format=" + this.format + ", compression=" + this.compression + ", transformation=" + this.transformation + ", keyDerivation=" + this.keyDerivation + "}";
+	}
+
+	static
+	public KeyDescriptor valueOf(Attributes attributes){
+		String algorithm = (String)attributes.get(AttributeNames.CODEVAULT_ALGORITHM);
+		String secretKeyId = (String)attributes.get(AttributeNames.CODEVAULT_SECRETKEY_ID);
+		String format = (String)attributes.get(AttributeNames.CODEVAULT_FORMAT);
+		String compression = (String)attributes.get(AttributeNames.CODEVAULT_COMPRESSION);
+		String transformation = (String)attributes.get(AttributeNames.CODEVAULT_TRANSFORMATION);
+		String keyDerivation = (String)attributes.get(AttributeNames.CODEVAULT_KEY_DERIVATION);
+
+		if(algorithm == null && secretKeyId == null){
+			return KeyDescriptor.NONE;
+		}
+
+		return new KeyDescriptor(algorithm, secretKeyId, format, compression, transformation, keyDerivation);
+	}
+
+	/**
+	 * @return A key descriptor that has default values for all other attributes.
+	 */
+	static
+	public KeyDescriptor of(String algorithm, String secretKeyId){
+		return new KeyDescriptor(algorithm, secretKeyId, null, null, null, null);
+	}
+
+	public static final KeyDescriptor NONE = KeyDescriptor.of(null, null);
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+public class KeyIndex {
+
+	private KeyDescriptor mainDescriptor = null;
+
+	private Map<String, KeyDescriptor> entryDescriptors = null;
+
+	private Node rules = null;
+
+	private List<BinaryKeyIndex> binaryIndexes = null;
+
+	private boolean binaryPrefixRules = false;
+
+	private volatile Map<String, KeyDescriptor> allEntryDescriptors = null;
+
+
+	private KeyIndex(KeyDescriptor mainDescriptor, Map<String, KeyDescriptor> entryDescriptors, Node rules, List<BinaryKeyIndex> binaryIndexes){
+		this.mainDescriptor = mainDescriptor;
+		this.entryDescriptors = entryDescriptors;
+		this.rules = rules;
+		this.binaryIndexes = binaryIndexes;
+		this.binaryPrefixRules = binaryIndexes.stream()
+			.anyMatch(BinaryKeyIndex::hasPrefixRules);
+	}
+
+	public KeyDescriptor getKeyDescriptor(String name){
+		KeyDescriptor ruleDescriptor = getRuleDescriptor(name);
+		if(ruleDescriptor != null){
+			return ruleDescriptor;
+		}
+
+		return this.mainDescriptor;
+	}
+
+	/**
+	 * <p>
+	 * Resolves an entry name to the descriptor of the most specific rule that applies to it.
+	 * </p>
+	 *
+	 * <p>
+	 * An entry rule applies to the named entry only.
+	 * A prefix rule, whose name ends with the <code>/</code> character (eg. <code>com/example/</code>), applies to all entries in the named package and its subpackages.
+	 * Entry rules take precedence over prefix rules, and longer prefix rules take precedence over shorter ones.
+	 * </p>
+	 *
+	 * <p>
+	 * Between rules of equal specificity, manifest rules take precedence over binary index rules.
+	 * Binary indexes are searched in reverse order of addition, so that later indexes take precedence over earlier ones.
+	 * </p>
+	 *
+	 * @return The rule descriptor, or <code>null</code> if no rule applies.
+	 */
+	public KeyDescriptor getRuleDescriptor(String name){
+		KeyDescriptor entryDescriptor = this.entryDescriptors.get(name);
+		if(entryDescriptor != null){
+			return entryDescriptor;
+		}
+
+		List<BinaryKeyIndex> binaryIndexes = this.binaryIndexes;
+
+		for(int i = binaryIndexes.size() - 1; i > -1; i--){
+			BinaryKeyIndex binaryIndex = binaryIndexes.get(i);
+
+			entryDescriptor = binaryIndex.getEntryDescriptor(name);
+			if(entryDescriptor != null){
+				return entryDescriptor;
+			}
+		}
+
+		// The length of the longest matching manifest prefix rule
+		int length = 0;
+
+		KeyDescriptor prefixDescriptor = null;
+
+		Node node = this.rules;
+
+		for(int begin = 0, end = name.indexOf('/'); node != null && end > -1; begin = end + 1, end = name.indexOf('/', begin)){
+			node = node.getChild(name, begin, end);
+
+			if(node != null && node.getDescriptor() != null){
+				length = end + 1;
+
+				prefixDescriptor = node.getDescriptor();
+			}
+		}
+
+		if(!this.binaryPrefixRules){
+			return prefixDescriptor;
+		}
+
+		for(int end = name.lastIndexOf('/'); end + 1 > length; end = name.lastIndexOf('/', end - 1)){
+
+			for(int i = binaryIndexes.size() - 1; i > -1; i--){
+				BinaryKeyIndex binaryIndex = binaryIndexes.get(i);
+
+				if(!binaryIndex.hasPrefixRules()){
+					continue;
+				}
+
+				entryDescriptor = binaryIndex.getEntryDescriptor(name, end + 1);
+				if(entryDescriptor != null){
+					return entryDescriptor;
+				}
+			}
+		}
+
+		return prefixDescriptor;
+	}
+
+	public boolean containsEntry(String name){
+
+		if(this.entryDescriptors.containsKey(name)){
+			return true;
+		}
+
+		for(BinaryKeyIndex binaryIndex : this.binaryIndexes){
+
+			if(binaryIndex.containsEntry(name)){
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return The names of entries whose effective descriptor satisfies the predicate.
+	 */
+	public List<String> getEntryNames(Predicate<KeyDescriptor> predicate){
+		Set<String> result = new LinkedHashSet<>();
+
+		Collection<Map.Entry<String, KeyDescriptor>> entries = this.entryDescriptors.entrySet();
+		for(Map.Entry<String, KeyDescriptor> entry : entries){
+
+			if(predicate.test(entry.getValue())){
+				result.add(entry.getKey());
+			}
+		}
+
+		for(BinaryKeyIndex binaryIndex : this.binaryIndexes){
+			List<String> names = binaryIndex.getEntryNames(predicate);
+
+			for(String name : names){
+
+				// Skip shadowed entries
+				if(!result.contains(name) && getKeyDescriptor(name) == binaryIndex.getEntryDescriptor(name)){
+					result.add(name);
+				}
+			}
+		}
+
+		return new ArrayList<>(result);
+	}
+
+	/**
+	 * @return <code>true</code> if this index contains prefix rules, <code>false</code> otherwise.
+	 */
+	public boolean hasPrefixRules(){
+		return (this.rules != null) || this.binaryPrefixRules;
+	}
+
+	public KeyDescriptor getMainDescriptor(){
+		return this.mainDescriptor;
+	}
+
+	/**
+	 * <p>
+	 * Binary index entries are materialized on first access.
+	 * Prefer {@link #getKeyDescriptor(String)} and {@link #getEntryNames(Predicate)} for querying.
+	 * </p>
+	 */
+	public Map<String, KeyDescriptor> getEntryDescriptors(){
+
+		if(this.binaryIndexes.isEmpty()){
+			return this.entryDescriptors;
+		}
+
+		Map<String, KeyDescriptor> allEntryDescriptors = this.allEntryDescriptors;
+
+		if(allEntryDescriptors == null){
+			Map<String, KeyDescriptor> result = new HashMap<>();
+
+			List<String> names = getEntryNames(keyDescriptor -> true);
+			for(String name : names){
+				result.put(name, getKeyDescriptor(name));
+			}
+
+			allEntryDescriptors = Collections.unmodifiableMap(result);
+
+			this.allEntryDescriptors = allEntryDescriptors;
+		}
+
+		return allEntryDescriptors;
+	}
+
+	public List<BinaryKeyIndex> getBinaryIndexes(){
+		return this.binaryIndexes;
+	}
+
+	static
+	public KeyIndex compile(Manifest manifest){
+		return compile(manifest, Collections.emptyList());
+	}
+
+	static
+	public KeyIndex compile(Manifest manifest, List<BinaryKeyIndex> binaryIndexes){
+		Attributes mainAttributes = manifest.getMainAttributes();
+
+		Map<KeyDescriptor, KeyDescriptor> descriptors = new HashMap<>();
+
+		KeyDescriptor mainDescriptor = intern(descriptors, KeyDescriptor.valueOf(mainAttributes));
+
+		Map<String, KeyDescriptor> entryDescriptors = new HashMap<>();
+
+		Node rules = null;
+
+		Collection<Map.Entry<String, Attributes>> entries = (manifest.getEntries()).entrySet();
+		for(Map.Entry<String, Attributes> entry : entries){
+			Attributes entryAttributes = entry.getValue();
+
+			if(entryAttributes == null || entryAttributes.isEmpty()){
+				continue;
+			}
+
+			Attributes attributes = new Attributes(mainAttributes);
+			attributes.putAll(entryAttributes);
+
+			KeyDescriptor entryDescriptor = intern(descriptors, KeyDescriptor.valueOf(attributes));
+
+			entryDescriptors.put(entry.getKey(), entryDescriptor);
+
+			if(isPrefixRule(entry.getKey())){
+
+				if(rules == null){
+					rules = new Node();
+				}
+
+				rules.put(entry.getKey(), entryDescriptor);
+			}
+		}
+
+		return new KeyIndex(mainDescriptor, Collections.unmodifiableMap(entryDescriptors), rules, Collections.unmodifiableList(new ArrayList<>(binaryIndexes)));
+	}
+
+	static
+	public boolean isPrefixRule(String name){
+		return name.endsWith("/");
+	}
+
+	static
+	private KeyDescriptor intern(Map<KeyDescriptor, KeyDescriptor> descriptors, KeyDescriptor descriptor){
+
+		if(descriptor == KeyDescriptor.NONE){
+			return descriptor;
+		}
+
+		KeyDescriptor result = descriptors.putIfAbsent(descriptor, descriptor);
+		if(result == null){
+			result = descriptor;
+		}
+
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * A node of the prefix rule trie.
+	 * </p>
+	 *
+	 * Children are kept in segment order, and are looked up by a region of the entry name, without allocating a segment string.
+	 */
+	static
+	private class Node {
+
+		private String[] segments = null;
+
+		private Node[] children = null;
+
+		private KeyDescriptor descriptor = null;
+
+
+		/**
+		 * @param begin The start of the segment in the name, inclusive.
+		 * @param end The end of the segment in the name, exclusive.
+		 */
+		public Node getChild(String name, int begin, int end){
+			int index = search(name, begin, end);
+
+			if(index < 0){
+				return null;
+			}
+
+			return this.children[index];
+		}
+
+		public KeyDescriptor getDescriptor(){
+			return this.descriptor;
+		}
+
+		public void put(String prefix, KeyDescriptor descriptor){
+			Node node = this;
+
+			for(int begin = 0, end = prefix.indexOf('/'); end > -1; begin = end + 1, end = prefix.indexOf('/', begin)){
+				int index = node.search(prefix, begin, end);
+
+				if(index < 0){
+					index = -(index + 1);
+
+					node.insert(index, prefix.substring(begin, end), new Node());
+				}
+
+				node = node.children[index];
+			}
+
+			node.descriptor = descriptor;
+		}
+
+		private void insert(int index, String segment, Node child){
+			int length = (this.segments != null ? this.segments.length : 0);
+
+			String[] segments = new String[length + 1];
+			Node[] children = new Node[length + 1];
+
+			if(length > 0){
+				System.arraycopy(this.segments, 0, segments, 0, index);
+				System.arraycopy(this.segments, index, segments, index + 1, length - index);
+
+				System.arraycopy(this.children, 0, children, 0, index);
+				System.arraycopy(this.children, index, children, index + 1, length - index);
+			}
+
+			segments[index] = segment;
+			children[index] = child;
+
+			this.segments = segments;
+			this.children = children;
+		}
+
+		/**
+		 * @return The index of the segment, or <code>-(insertion point + 1)</code> if there is no such segment.
+		 */
+		private int search(String name, int begin, int end){
+			String[] segments = this.segments;
+
+			if(segments == null){
+				return -1;
+			}
+
+			int low = 0;
+			int high = segments.length - 1;
+
+			while(low <= high){
+				int mid = (low + high) >>> 1;
+
+				int order = compare(segments[mid], name, begin, end);
+
+				if(order < 0){
+					low = mid + 1;
+				} else
+
+				if(order > 0){
+					high = mid - 1;
+				} else
+
+				{
+					return mid;
+				}
+			}
+
+			return -(low + 1);
+		}
+
+		static
+		private int compare(String segment, String name, int begin, int end){
+			int length = end - begin;
+			int commonLength = Math.min(segment.length(), length);
+
+			for(int i = 0; i < commonLength; i++){
+				int order = segment.charAt(i) - name.charAt(begin + i);
+
+				if(order != 0){
+					return order;
+				}
+			}
+
+			return segment.length() - length;
+		}
+	}
+}
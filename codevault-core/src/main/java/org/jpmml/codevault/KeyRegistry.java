@@ -3,74 +3,324 @@
  */
 package org.jpmml.codevault;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
+/**
+ * <p>
+ * A registry of key descriptors and secret keys.
+ * </p>
+ *
+ * <p>
+ * The registry is safe for use by multiple concurrent threads.
+ * Readers work against an immutable snapshot, which is obtained with a single volatile read.
+ * Updates are serialized, and publish a new snapshot atomically.
+ * Secret keys can be added or replaced (ie. rotated) while classes are being loaded.
+ * </p>
+ *
+ * After an update to rules, the first reader compiles and publishes a new snapshot.
+ */
 public class KeyRegistry {
 
 	private Manifest manifest = new Manifest();
 
-	private Map<String, byte[]> encodedKeys = new LinkedHashMap<>();
+	private List<BinaryKeyIndex> binaryIndexes = new ArrayList<>();
+
+	private List<String> ownedEntryNames = new ArrayList<>();
+
+	private Set<KeyDescriptor> ownedMainDescriptors = new HashSet<>();
+
+	private Map<String, List<URL>> origins = new HashMap<>();
+
+	private boolean unboundedRules = false;
+
+	private volatile Snapshot snapshot = new Snapshot(null, null, Collections.emptyMap(), Collections.emptyMap());
+
+	private SecretKeyCache secretKeyCache = null;
 
 
 	public KeyRegistry(){
+		this(new SecretKeyCache());
+	}
+
+	/**
+	 * @param secretKeyCache The cache of secret keys.
+	 * With <code>PACKAGE</code> key derivation, the working set is one secret key per protected package.
+	 * With <code>ENTRY</code> key derivation, the working set is one secret key per protected entry.
+	 */
+	public KeyRegistry(SecretKeyCache secretKeyCache){
+		setSecretKeyCache(secretKeyCache);
 	}
 
+	/**
+	 * <p>
+	 * Loads all <code>META-INF/CODEVAULT.MF</code> manifests that are visible to the class loader.
+	 * </p>
+	 *
+	 * If a manifest is accompanied by a <code>META-INF/CODEVAULT.IDX</code> binary key index, then the binary key index is loaded instead.
+	 *
+	 * If a manifest protects its source JAR file or directory by main attributes or prefix rules, then the source is listed,
+	 * and its protected entries are recorded by name.
+	 *
+	 * The source of every entry rule and every listed entry is recorded as its origin.
+	 *
+	 * @see BinaryKeyIndex
+	 * @see #getOwnership()
+	 * @see #getOrigins(String)
+	 */
 	public void load(ClassLoader classLoader) throws IOException {
+		load(classLoader, Runnable::run);
+	}
+
+	/**
+	 * <p>
+	 * Loads all <code>META-INF/CODEVAULT.MF</code> manifests that are visible to the class loader, reading them in parallel.
+	 * </p>
+	 *
+	 * Sources are read and listed concurrently, and are merged in class path order.
+	 * The outcome is the same as that of {@link #load(ClassLoader)}.
+	 *
+	 * @param executor The executor for read tasks.
+	 *
+	 * @return The loaded sources, in class path order.
+	 */
+	public List<Source> load(ClassLoader classLoader, Executor executor) throws IOException {
 		Enumeration<URL> urls = classLoader.getResources("META-INF/CODEVAULT.MF");
 
+		List<CompletableFuture<Source>> futures = new ArrayList<>();
+
 		while(urls.hasMoreElements()){
 			URL url = urls.nextElement();
 
-			try(InputStream is = url.openStream()){
-				Manifest manifest = new Manifest(is);
+			CompletableFuture<Source> future = CompletableFuture.supplyAsync(() -> {
 
-				addMainAttributes(manifest.getMainAttributes());
-
-				Collection<Map.Entry<String, Attributes>> entries = (manifest.getEntries()).entrySet();
-				for(Map.Entry<String, Attributes> entry : entries){
-					addAttributes(entry.getKey(), entry.getValue());
+				try {
+					return Source.read(url);
+				} catch(IOException ioe){
+					throw new UncheckedIOException(ioe);
 				}
+			}, executor);
+
+			futures.add(future);
+		}
+
+		List<Source> result = new ArrayList<>(futures.size());
+
+		try {
+			for(CompletableFuture<Source> future : futures){
+				result.add(future.join());
+			}
+		} catch(CompletionException ce){
+			Throwable cause = ce.getCause();
+
+			for(CompletableFuture<Source> future : futures){
+				future.cancel(false);
+			}
+
+			if(cause instanceof UncheckedIOException){
+				throw ((UncheckedIOException)cause).getCause();
+			} else
+
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			} else
+
+			if(cause instanceof Error){
+				throw (Error)cause;
+			}
+
+			throw ce;
+		}
+
+		// All sources are published at once
+		synchronized(this){
+
+			for(Source source : result){
+				merge(source);
+			}
+
+			compile();
+		}
+
+		return result;
+	}
+
+	private void merge(Source source){
+		URL archiveUrl = source.getArchiveURL();
+
+		BinaryKeyIndex binaryIndex = source.binaryIndex;
+		if(binaryIndex != null){
+			putBinaryIndex(binaryIndex);
+		} else
+
+		{
+			Manifest manifest = source.manifest;
+
+			putMainAttributes(manifest.getMainAttributes());
+
+			Collection<Map.Entry<String, Attributes>> entries = (manifest.getEntries()).entrySet();
+			for(Map.Entry<String, Attributes> entry : entries){
+				putAttributes(entry.getKey(), entry.getValue());
 			}
 		}
+
+		KeyIndex sourceIndex = source.sourceIndex;
+
+		List<String> entryNames = sourceIndex.getEntryNames(keyDescriptor -> true);
+		for(String entryName : entryNames){
+
+			if(!KeyIndex.isPrefixRule(entryName)){
+				addOrigin(entryName, archiveUrl);
+			}
+		}
+
+		KeyDescriptor mainDescriptor = sourceIndex.getMainDescriptor();
+
+		if(source.listed){
+			List<String> ownedEntryNames = source.ownedEntryNames;
+
+			for(String ownedEntryName : ownedEntryNames){
+				this.ownedEntryNames.add(ownedEntryName);
+
+				addOrigin(ownedEntryName, archiveUrl);
+			}
+
+			if(mainDescriptor.isEncrypted()){
+				this.ownedMainDescriptors.add(mainDescriptor);
+			}
+		} else
+
+		if(mainDescriptor.isEncrypted() || sourceIndex.hasPrefixRules()){
+			this.unboundedRules = true;
+		}
+
+		// Retained by the registry itself, if at all
+		source.binaryIndex = null;
+		source.manifest = null;
+		source.sourceIndex = null;
+		source.ownedEntryNames = null;
 	}
 
 	public SecretKey getSecretKey(String name){
-		Attributes attributes = getAttributes(name);
+		KeyDescriptor keyDescriptor = getKeyDescriptor(name);
 
-		return getSecretKey(attributes);
+		return getSecretKey(keyDescriptor, name);
 	}
 
 	public SecretKey getSecretKey(Attributes attributes){
 
 		if(attributes != null && !attributes.isEmpty()){
-			String algorithm = (String)attributes.get(AttributeNames.CODEVAULT_ALGORITHM);
-			String secretKeyId = (String)attributes.get(AttributeNames.CODEVAULT_SECRETKEY_ID);
-			if(algorithm == null || secretKeyId == null){
+			KeyDescriptor keyDescriptor = KeyDescriptor.valueOf(attributes);
+
+			if(!keyDescriptor.isEncrypted()){
 				throw new IllegalArgumentException();
 			}
 
-			byte[] encodedKey = getEncodedKey(secretKeyId);
-			if(encodedKey == null){
-				throw new IllegalArgumentException();
+			return getSecretKey(keyDescriptor);
+		}
+
+		return null;
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the secret key is not available, or if it must be derived.
+	 *
+	 * @see #getSecretKey(KeyDescriptor, String)
+	 */
+	public SecretKey getSecretKey(KeyDescriptor keyDescriptor){
+
+		if(keyDescriptor != null && keyDescriptor.isEncrypted()){
+
+			if(keyDescriptor.isDerived()){
+				throw new IllegalArgumentException("Secret key " + keyDescriptor.getSecretKeyId() + " must be derived for a specific entry");
 			}
 
-			return new SecretKeySpec(encodedKey, algorithm);
+			byte[] encodedKey = getEncodedKey(keyDescriptor);
+
+			SecretKeyCache secretKeyCache = getSecretKeyCache();
+
+			return secretKeyCache.get(keyDescriptor, encodedKey, (key) -> new SecretKeySpec(encodedKey, key.getKeyAlgorithm()));
 		}
 
 		return null;
 	}
 
+	/**
+	 * <p>
+	 * Gets the secret key of an entry.
+	 * </p>
+	 *
+	 * If the key descriptor specifies a key derivation scheme, then the secret key is derived from the master key on demand,
+	 * and is cached by derivation context.
+	 *
+	 * @param name The name of the entry.
+	 *
+	 * @throws IllegalArgumentException If the secret key is not available.
+	 *
+	 * @see KeyDerivation
+	 */
+	public SecretKey getSecretKey(KeyDescriptor keyDescriptor, String name){
+
+		if(keyDescriptor != null && keyDescriptor.isDerived()){
+			KeyDerivation keyDerivation = KeyDerivation.valueOf(keyDescriptor.getKeyDerivation());
+
+			byte[] encodedKey = getEncodedKey(keyDescriptor);
+
+			SecretKeyCache secretKeyCache = getSecretKeyCache();
+
+			return secretKeyCache.get(keyDescriptor, keyDerivation.getContext(name), encodedKey, (key, context) -> new SecretKeySpec(keyDerivation.derive(encodedKey, context), key.getKeyAlgorithm()));
+		}
+
+		return getSecretKey(keyDescriptor);
+	}
+
+	/**
+	 * @return The key descriptor of the entry.
+	 * If the ownership is complete, then entries that it does not contain are not protected.
+	 */
+	public KeyDescriptor getKeyDescriptor(String name){
+		Snapshot snapshot = getSnapshot();
+
+		KeyIndex keyIndex = snapshot.keyIndex;
+		EntryOwnership ownership = snapshot.ownership;
+
+		if(ownership.isComplete() && !ownership.containsEntry(name)){
+			return KeyDescriptor.NONE;
+		}
+
+		return keyIndex.getKeyDescriptor(name);
+	}
+
+	synchronized
 	public Attributes getAttributes(String name){
 		Manifest manifest = getManifest();
 
@@ -80,12 +330,28 @@ public class KeyRegistry {
 		Attributes entryAttributes = manifest.getAttributes(name);
 		if(entryAttributes != null && !entryAttributes.isEmpty()){
 			result.putAll(entryAttributes);
+		} else
+
+		{
+			KeyIndex keyIndex = getKeyIndex();
+
+			KeyDescriptor ruleDescriptor = keyIndex.getRuleDescriptor(name);
+			if(ruleDescriptor != null){
+				result.putAll(ruleDescriptor.toAttributes());
+			}
 		}
 
 		return result;
 	}
 
+	synchronized
 	public void addMainAttributes(Attributes attributes){
+		putMainAttributes(attributes);
+
+		invalidate();
+	}
+
+	private void putMainAttributes(Attributes attributes){
 		Manifest manifest = getManifest();
 
 		Attributes mainAttributes = manifest.getMainAttributes();
@@ -99,7 +365,19 @@ public class KeyRegistry {
 		}
 	}
 
+	synchronized
 	public void addAttributes(String name, Attributes attributes){
+		putAttributes(name, attributes);
+
+		// The extent of a prefix rule is unknown
+		if(KeyIndex.isPrefixRule(name)){
+			this.unboundedRules = true;
+		}
+
+		invalidate();
+	}
+
+	private void putAttributes(String name, Attributes attributes){
 		Manifest manifest = getManifest();
 
 		Attributes entryAttributes = manifest.getAttributes(name);
@@ -120,16 +398,323 @@ public class KeyRegistry {
 		}
 	}
 
+	/**
+	 * <p>
+	 * Adds a binary key index.
+	 * </p>
+	 *
+	 * The main descriptor of the binary key index is merged into main attributes.
+	 */
+	synchronized
+	public void addBinaryIndex(BinaryKeyIndex binaryIndex){
+		putBinaryIndex(binaryIndex);
+
+		if(binaryIndex.hasPrefixRules()){
+			this.unboundedRules = true;
+		}
+
+		invalidate();
+	}
+
+	private void putBinaryIndex(BinaryKeyIndex binaryIndex){
+		KeyDescriptor mainDescriptor = binaryIndex.getMainDescriptor();
+
+		if(mainDescriptor != KeyDescriptor.NONE){
+			putMainAttributes(mainDescriptor.toAttributes());
+		}
+
+		this.binaryIndexes.add(binaryIndex);
+	}
+
+	/**
+	 * <p>
+	 * Compiles the current state of the manifest into an immutable index, and publishes it.
+	 * </p>
+	 *
+	 * The index is compiled automatically on first use, and is discarded by all mutator methods of this class.
+	 * Changes that are made to the manifest directly must be followed by a call to this method.
+	 */
+	synchronized
+	public KeyIndex compile(){
+		KeyIndex keyIndex = KeyIndex.compile(getManifest(), this.binaryIndexes);
+		EntryOwnership ownership = buildOwnership(keyIndex);
+
+		Snapshot snapshot = this.snapshot;
+
+		this.snapshot = new Snapshot(keyIndex, ownership, new HashMap<>(this.origins), snapshot.encodedKeys);
+
+		return keyIndex;
+	}
+
+	public KeyIndex getKeyIndex(){
+		Snapshot snapshot = getSnapshot();
+
+		return snapshot.keyIndex;
+	}
+
+	/**
+	 * @return An opaque token that is replaced whenever rules or secret keys change.
+	 */
+	Object getVersion(){
+		return getSnapshot();
+	}
+
+	/**
+	 * <p>
+	 * Gets the names of all protected entries.
+	 * </p>
+	 *
+	 * The ownership is complete if every main descriptor and prefix rule has been bounded by listing its source.
+	 * Registries that are populated programmatically are complete only if they consist of entry rules.
+	 */
+	public EntryOwnership getOwnership(){
+		Snapshot snapshot = getSnapshot();
+
+		return snapshot.ownership;
+	}
+
+	/**
+	 * <p>
+	 * Gets the class path elements that declare or contain a protected entry.
+	 * </p>
+	 *
+	 * Origins are only known for entries that were loaded from manifests.
+	 *
+	 * @return A list of JAR file or directory URLs, in class path order. An empty list if the origin is not known.
+	 *
+	 * @see #load(ClassLoader)
+	 */
+	public List<URL> getOrigins(String name){
+		Snapshot snapshot = getSnapshot();
+
+		List<URL> origins = snapshot.origins.get(name);
+
+		return (origins != null ? origins : Collections.emptyList());
+	}
+
+	private void addOrigin(String name, URL url){
+		List<URL> origins = this.origins.get(name);
+
+		if(origins == null){
+			this.origins.put(name, Collections.singletonList(url));
+
+			return;
+		} // End if
+
+		// Entries of the same source are added consecutively. URL#equals(Object) may resolve host names
+		if(!((origins.get(origins.size() - 1)).toExternalForm()).equals(url.toExternalForm())){
+			List<URL> newOrigins = new ArrayList<>(origins.size() + 1);
+			newOrigins.addAll(origins);
+			newOrigins.add(url);
+
+			// Lists are copied on write, because snapshots share them
+			this.origins.put(name, Collections.unmodifiableList(newOrigins));
+		}
+	}
+
+	/**
+	 * <p>
+	 * Gets the manifest.
+	 * </p>
+	 *
+	 * The manifest is not safe for concurrent modification.
+	 * Registries that are shared between threads should be updated using mutator methods of this class.
+	 */
 	public Manifest getManifest(){
 		return this.manifest;
 	}
 
 	public byte[] getEncodedKey(String id){
-		return this.encodedKeys.get(id);
+		Snapshot snapshot = this.snapshot;
+
+		return snapshot.encodedKeys.get(id);
 	}
 
+	/**
+	 * <p>
+	 * Adds or replaces a secret key.
+	 * </p>
+	 *
+	 * Replacing a secret key rotates it. Readers switch to the new secret key atomically.
+	 */
 	public void putEncodedKey(String id, byte[] bytes){
-		this.encodedKeys.put(id, bytes);
+		putEncodedKeys(Collections.singletonMap(id, bytes));
+	}
+
+	/**
+	 * <p>
+	 * Adds or replaces many secret keys in a single atomic update.
+	 * </p>
+	 */
+	public void putEncodedKeys(Map<String, byte[]> encodedKeys){
+		boolean replaced;
+
+		synchronized(this){
+			Snapshot snapshot = this.snapshot;
+
+			replaced = !Collections.disjoint(snapshot.encodedKeys.keySet(), encodedKeys.keySet());
+
+			Map<String, byte[]> newEncodedKeys = new LinkedHashMap<>(snapshot.encodedKeys);
+			newEncodedKeys.putAll(encodedKeys);
+
+			this.snapshot = new Snapshot(snapshot.keyIndex, snapshot.ownership, snapshot.origins, Collections.unmodifiableMap(newEncodedKeys));
+		}
+
+		// Releases ciphers that were initialized with replaced secret keys
+		if(replaced){
+			CipherCache.invalidateAll();
+		}
+
+		SecretKeyCache secretKeyCache = getSecretKeyCache();
+
+		// Releases secret keys that were made from replaced encoded keys
+		Collection<String> ids = encodedKeys.keySet();
+		for(String id : ids){
+			secretKeyCache.invalidate(id);
+		}
+	}
+
+	public SecretKeyCache getSecretKeyCache(){
+		return this.secretKeyCache;
+	}
+
+	private void setSecretKeyCache(SecretKeyCache secretKeyCache){
+		this.secretKeyCache = Objects.requireNonNull(secretKeyCache);
+	}
+
+	private Snapshot getSnapshot(){
+		Snapshot snapshot = this.snapshot;
+
+		if(snapshot.keyIndex == null){
+
+			synchronized(this){
+				snapshot = this.snapshot;
+
+				if(snapshot.keyIndex == null){
+					compile();
+
+					snapshot = this.snapshot;
+				}
+			}
+		}
+
+		return snapshot;
+	}
+
+	private void invalidate(){
+		Snapshot snapshot = this.snapshot;
+
+		this.snapshot = new Snapshot(null, null, null, snapshot.encodedKeys);
+	}
+
+	private EntryOwnership buildOwnership(KeyIndex keyIndex){
+		KeyDescriptor mainDescriptor = keyIndex.getMainDescriptor();
+
+		boolean complete = !this.unboundedRules && (!mainDescriptor.isEncrypted() || this.ownedMainDescriptors.contains(mainDescriptor));
+
+		List<String> names = new ArrayList<>(this.ownedEntryNames);
+
+		List<String> entryNames = keyIndex.getEntryNames(KeyDescriptor::isEncrypted);
+		for(String entryName : entryNames){
+
+			if(!KeyIndex.isPrefixRule(entryName)){
+				names.add(entryName);
+			}
+		}
+
+		return EntryOwnership.build(names, complete);
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the secret key is not available.
+	 */
+	private byte[] getEncodedKey(KeyDescriptor keyDescriptor){
+		String algorithm = keyDescriptor.getKeyAlgorithm();
+		String secretKeyId = keyDescriptor.getSecretKeyId();
+		if(algorithm == null || secretKeyId == null){
+			throw new IllegalArgumentException();
+		}
+
+		byte[] encodedKey = getEncodedKey(secretKeyId);
+		if(encodedKey == null){
+			throw new IllegalArgumentException();
+		}
+
+		return encodedKey;
+	}
+
+	/**
+	 * @param url The URL of a <code>META-INF/CODEVAULT.MF</code> manifest.
+	 *
+	 * @return The URL of the JAR file or directory that contains the manifest.
+	 */
+	static
+	private URL getArchiveURL(URL url) throws IOException {
+		URLConnection connection = url.openConnection();
+
+		if(connection instanceof JarURLConnection){
+			JarURLConnection jarConnection = (JarURLConnection)connection;
+
+			return jarConnection.getJarFileURL();
+		}
+
+		return new URL(url, "../");
+	}
+
+	/**
+	 * <p>
+	 * Maps a binary key index into memory if it is a local file or a stored JAR file entry, or reads it otherwise.
+	 * </p>
+	 *
+	 * @return A binary key index, or <code>null</code> if it does not exist.
+	 */
+	static
+	private BinaryKeyIndex loadBinaryIndex(URL url) throws IOException {
+		URL archiveUrl = url;
+		String name = null;
+
+		URLConnection connection = url.openConnection();
+
+		if(connection instanceof JarURLConnection){
+			JarURLConnection jarConnection = (JarURLConnection)connection;
+
+			archiveUrl = jarConnection.getJarFileURL();
+			name = jarConnection.getEntryName();
+		} // End if
+
+		if(("file").equals(archiveUrl.getProtocol())){
+
+			if(name != null){
+
+				try(Archive archive = Archive.open(archiveUrl)){
+					ByteBuffer buffer = (archive != null ? archive.map(name) : null);
+
+					return (buffer != null ? new BinaryKeyIndex(buffer) : null);
+				}
+			}
+
+			File file;
+
+			try {
+				file = new File(url.toURI());
+			} catch(IllegalArgumentException | URISyntaxException e){
+				return null;
+			}
+
+			if(!file.isFile()){
+				return null;
+			}
+
+			try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+				return new BinaryKeyIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+		}
+
+		try(InputStream is = connection.getInputStream()){
+			return new BinaryKeyIndex(IOUtil.readFully(is, connection.getContentLengthLong()));
+		} catch(FileNotFoundException fnfe){
+			return null;
+		}
 	}
 
 	static
@@ -138,4 +723,173 @@ public class KeyRegistry {
 
 		return (stringName.toUpperCase()).startsWith("X-CODEVAULT-");
 	}
+
+	/**
+	 * <p>
+	 * An immutable view of the registry.
+	 * </p>
+	 *
+	 * The compiled part is <code>null</code> if rules have changed since the last compilation.
+	 */
+	static
+	private class Snapshot {
+
+		private KeyIndex keyIndex = null;
+
+		private EntryOwnership ownership = null;
+
+		private Map<String, List<URL>> origins = null;
+
+		private Map<String, byte[]> encodedKeys = null;
+
+
+		private Snapshot(KeyIndex keyIndex, EntryOwnership ownership, Map<String, List<URL>> origins, Map<String, byte[]> encodedKeys){
+			this.keyIndex = keyIndex;
+			this.ownership = ownership;
+			this.origins = origins;
+			this.encodedKeys = encodedKeys;
+		}
+	}
+
+	/**
+	 * <p>
+	 * A <code>META-INF/CODEVAULT.MF</code> manifest, or its binary key index, together with the JAR file or directory that contains it.
+	 * </p>
+	 */
+	static
+	public class Source {
+
+		private URL url = null;
+
+		private URL archiveUrl = null;
+
+		private boolean binary = false;
+
+		private long duration = 0L;
+
+		private BinaryKeyIndex binaryIndex = null;
+
+		private Manifest manifest = null;
+
+		private KeyIndex sourceIndex = null;
+
+		private boolean listed = false;
+
+		private List<String> ownedEntryNames = null;
+
+
+		private Source(URL url, URL archiveUrl){
+			this.url = url;
+			this.archiveUrl = archiveUrl;
+		}
+
+		/**
+		 * @return The URL of the manifest.
+		 */
+		public URL getURL(){
+			return this.url;
+		}
+
+		/**
+		 * @return The URL of the JAR file or directory.
+		 */
+		public URL getArchiveURL(){
+			return this.archiveUrl;
+		}
+
+		/**
+		 * @return <code>true</code> if the binary key index was loaded instead of the manifest, <code>false</code> otherwise.
+		 */
+		public boolean isBinary(){
+			return this.binary;
+		}
+
+		/**
+		 * @return The time it took to read and list this source, in nanoseconds.
+		 */
+		public long getDuration(){
+			return this.duration;
+		}
+
+		/**
+		 * <p>
+		 * Reads a source, without modifying any registry.
+		 * </p>
+		 *
+		 * If the manifest protects its source by main attributes or prefix rules, then the source is listed,
+		 * and the names of protected entries are collected.
+		 */
+		static
+		private Source read(URL url) throws IOException {
+			long begin = System.nanoTime();
+
+			Source result = new Source(url, KeyRegistry.getArchiveURL(url));
+
+			BinaryKeyIndex binaryIndex = loadBinaryIndex(new URL(url, BinaryKeyIndex.NAME));
+			if(binaryIndex != null){
+				Manifest manifest = new Manifest();
+				(manifest.getMainAttributes()).putAll((binaryIndex.getMainDescriptor()).toAttributes());
+
+				result.binary = true;
+				result.binaryIndex = binaryIndex;
+				result.sourceIndex = KeyIndex.compile(manifest, Collections.singletonList(binaryIndex));
+			} else
+
+			{
+				Manifest manifest;
+
+				try(InputStream is = url.openStream()){
+					manifest = new Manifest(is);
+				}
+
+				result.manifest = manifest;
+				result.sourceIndex = KeyIndex.compile(manifest);
+			}
+
+			result.list();
+
+			result.duration = (System.nanoTime() - begin);
+
+			return result;
+		}
+
+		private void list() throws IOException {
+			KeyIndex sourceIndex = this.sourceIndex;
+
+			KeyDescriptor mainDescriptor = sourceIndex.getMainDescriptor();
+
+			if(!mainDescriptor.isEncrypted() && !sourceIndex.hasPrefixRules()){
+				this.listed = true;
+				this.ownedEntryNames = Collections.emptyList();
+
+				return;
+			}
+
+			try(Archive archive = Archive.open(this.archiveUrl)){
+
+				if(archive == null){
+					return;
+				}
+
+				List<String> ownedEntryNames = new ArrayList<>();
+
+				List<String> names = archive.list();
+				for(String name : names){
+					KeyDescriptor keyDescriptor = sourceIndex.getRuleDescriptor(name);
+
+					if(keyDescriptor == null){
+						// Archive-level protection does not extend to metadata
+						keyDescriptor = (name.startsWith("META-INF/") ? KeyDescriptor.NONE : mainDescriptor);
+					} // End if
+
+					if(keyDescriptor.isEncrypted()){
+						ownedEntryNames.add(name);
+					}
+				}
+
+				this.listed = true;
+				this.ownedEntryNames = ownedEntryNames;
+			}
+		}
+	}
 }
\ No newline at end of file
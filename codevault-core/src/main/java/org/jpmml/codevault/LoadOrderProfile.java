@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>
+ * The order and timing of protected class loads during a run.
+ * </p>
+ *
+ * <p>
+ * A profile is recorded by registering it as a class loading listener, and is written out when the run is over:
+ * <pre>
+ * LoadOrderProfile profile = new LoadOrderProfile();
+ * classLoader.addClassLoadingListener(profile);
+ * ...
+ * profile.write(new File("codevault.profile"));
+ * </pre>
+ * Only successful loads of encrypted classes are recorded, in completion order.
+ * All times are in nanoseconds, relative to the creation of the profile.
+ * </p>
+ *
+ * The encrypt goal uses a profile for laying out a vault so that the recorded entries can be read in a single sequential pass.
+ */
+public class LoadOrderProfile implements ClassLoadingListener {
+
+	private long startTime = 0L;
+
+	private Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+
+
+	public LoadOrderProfile(){
+		this.startTime = System.nanoTime();
+	}
+
+	@Override
+	public void classLoaded(ClassLoadingRecord record){
+
+		if(!record.isEncrypted()){
+			return;
+		}
+
+		long duration = record.getTotalDuration();
+
+		String entryName = (record.getName()).replace('.', '/') + ".class";
+
+		this.entries.add(new Entry(entryName, (System.nanoTime() - duration) - this.startTime, duration, record.getSize()));
+	}
+
+	@Override
+	public void classLoadFailed(ClassLoadingRecord record, Throwable throwable){
+	}
+
+	public List<Entry> getEntries(){
+		return new ArrayList<>(this.entries);
+	}
+
+	/**
+	 * @return The names of recorded entries, in load order, without duplicates.
+	 */
+	public List<String> getEntryNames(){
+		Set<String> result = new LinkedHashSet<>();
+
+		for(Entry entry : this.entries){
+			result.add(entry.getName());
+		}
+
+		return new ArrayList<>(result);
+	}
+
+	public void addEntry(Entry entry){
+		this.entries.add(Objects.requireNonNull(entry));
+	}
+
+	public void write(File file) throws IOException {
+
+		try(BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)){
+			writer.write("# JPMML-CodeVault load order profile");
+			writer.newLine();
+
+			writer.write("# time duration size name");
+			writer.newLine();
+
+			for(Entry entry : this.entries){
+				writer.write(entry.getTime() + " " + entry.getDuration() + " " + entry.getSize() + " " + entry.getName());
+				writer.newLine();
+			}
+		}
+	}
+
+	static
+	public LoadOrderProfile read(File file) throws IOException {
+		LoadOrderProfile result = new LoadOrderProfile();
+
+		try(BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)){
+
+			while(true){
+				String line = reader.readLine();
+				if(line == null){
+					break;
+				} // End if
+
+				if(line.isEmpty() || line.startsWith("#")){
+					continue;
+				}
+
+				String[] parts = line.split(" ", 4);
+				if(parts.length != 4){
+					throw new IOException("Malformed line: " + line);
+				}
+
+				try {
+					result.addEntry(new Entry(parts[3], Long.parseLong(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2])));
+				} catch(NumberFormatException nfe){
+					throw new IOException("Malformed line: " + line, nfe);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	static
+	public class Entry {
+
+		private String name = null;
+
+		private long time = 0L;
+
+		private long duration = 0L;
+
+		private int size = 0;
+
+
+		public Entry(String name, long time, long duration, int size){
+			this.name = Objects.requireNonNull(name);
+			this.time = time;
+			this.duration = duration;
+			this.size = size;
+		}
+
+		/**
+		 * @return The name of the class file entry (eg. <code>com/example/Main.class</code>).
+		 */
+		public String getName(){
+			return this.name;
+		}
+
+		/**
+		 * @return The start time of the load.
+		 */
+		public long getTime(){
+			return this.time;
+		}
+
+		public long getDuration(){
+			return this.duration;
+		}
+
+		/**
+		 * @return The size of the class definition, in bytes.
+		 */
+		public int getSize(){
+			return this.size;
+		}
+	}
+}
@@ -0,0 +1,13 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+public enum Phase {
+	LOOKUP,
+	READ,
+	KEY_RESOLUTION,
+	DECRYPT,
+	DEFINE,
+	;
+}
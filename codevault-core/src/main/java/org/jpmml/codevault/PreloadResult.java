@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * The outcome of a {@link DecryptingURLClassLoader#preload(java.util.Collection)} method call.
+ * </p>
+ *
+ * A class that fails to preload does not prevent other classes from being preloaded.
+ */
+public class PreloadResult {
+
+	private Map<String, Class<?>> classes = new LinkedHashMap<>();
+
+	private Map<String, Throwable> failures = new LinkedHashMap<>();
+
+
+	PreloadResult(){
+	}
+
+	/**
+	 * @return The loaded classes, in definition order.
+	 */
+	public Map<String, Class<?>> getClasses(){
+		return Collections.unmodifiableMap(this.classes);
+	}
+
+	void addClass(String name, Class<?> clazz){
+		this.classes.put(name, clazz);
+	}
+
+	/**
+	 * @return The causes of failure, keyed by class name.
+	 */
+	public Map<String, Throwable> getFailures(){
+		return Collections.unmodifiableMap(this.failures);
+	}
+
+	void addFailure(String name, Throwable failure){
+		this.failures.put(name, failure);
+	}
+
+	public boolean isSuccessful(){
+		return this.failures.isEmpty();
+	}
+}
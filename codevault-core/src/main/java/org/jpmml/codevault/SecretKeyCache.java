@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import javax.crypto.SecretKey;
+
+/**
+ * <p>
+ * A bounded concurrent cache of secret keys.
+ * </p>
+ *
+ * Lookups are lock-free, and do not allocate.
+ * When the cache is full, secret keys are evicted in clock order, giving a second chance to secret keys that have been used since the clock hand last passed them.
+ *
+ * Plain keys are cached by key descriptor.
+ * Derived keys are cached by key descriptor and derivation context.
+ * A cached key that was made from a since replaced encoded key is never returned.
+ */
+public class SecretKeyCache {
+
+	private int maximumSize = 0;
+
+	private ConcurrentMap<KeyDescriptor, ConcurrentMap<String, CachedKey>> secretKeys = new ConcurrentHashMap<>();
+
+	private Iterator<ConcurrentMap<String, CachedKey>> descriptorHand = null;
+
+	private Iterator<CachedKey> contextHand = null;
+
+	private LongAdder hitCount = new LongAdder();
+
+	private LongAdder missCount = new LongAdder();
+
+
+	public SecretKeyCache(){
+		this(SecretKeyCache.DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public SecretKeyCache(int maximumSize){
+		setMaximumSize(maximumSize);
+	}
+
+	public SecretKey get(KeyDescriptor keyDescriptor, Function<KeyDescriptor, SecretKey> function){
+		return get(keyDescriptor, null, function);
+	}
+
+	public SecretKey get(KeyDescriptor keyDescriptor, String context, BiFunction<KeyDescriptor, String, SecretKey> function){
+		return get(keyDescriptor, context, null, function);
+	}
+
+	/**
+	 * @param version The source of the secret key.
+	 * A cached secret key is reused only if it was made from the identical source.
+	 */
+	SecretKey get(KeyDescriptor keyDescriptor, Object version, Function<KeyDescriptor, SecretKey> function){
+		SecretKey secretKey = lookup(keyDescriptor, SecretKeyCache.PLAIN_CONTEXT, version);
+
+		if(secretKey != null){
+			return secretKey;
+		}
+
+		secretKey = function.apply(keyDescriptor);
+
+		put(keyDescriptor, SecretKeyCache.PLAIN_CONTEXT, new CachedKey(secretKey, version));
+
+		return secretKey;
+	}
+
+	SecretKey get(KeyDescriptor keyDescriptor, String context, Object version, BiFunction<KeyDescriptor, String, SecretKey> function){
+		SecretKey secretKey = lookup(keyDescriptor, Objects.requireNonNull(context), version);
+
+		if(secretKey != null){
+			return secretKey;
+		}
+
+		secretKey = function.apply(keyDescriptor, context);
+
+		put(keyDescriptor, context, new CachedKey(secretKey, version));
+
+		return secretKey;
+	}
+
+	private SecretKey lookup(KeyDescriptor keyDescriptor, String context, Object version){
+		ConcurrentMap<String, CachedKey> contextKeys = this.secretKeys.get(keyDescriptor);
+
+		CachedKey cachedKey = (contextKeys != null ? contextKeys.get(context) : null);
+
+		if(cachedKey != null && cachedKey.version == version){
+			this.hitCount.increment();
+
+			// Avoids a write to a shared cache line when the flag is already set
+			if(!cachedKey.referenced){
+				cachedKey.referenced = true;
+			}
+
+			return cachedKey.secretKey;
+		}
+
+		this.missCount.increment();
+
+		return null;
+	}
+
+	private void put(KeyDescriptor keyDescriptor, String context, CachedKey cachedKey){
+		ConcurrentMap<String, CachedKey> contextKeys = this.secretKeys.computeIfAbsent(keyDescriptor, key -> new ConcurrentHashMap<>());
+
+		contextKeys.put(context, cachedKey);
+
+		if(size() > this.maximumSize){
+			evict(cachedKey);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Advances the clock hand until the cache is back within its maximum size.
+	 * </p>
+	 *
+	 * Only cache misses evict, so the lock is never taken on the lookup path.
+	 *
+	 * @param newKey The secret key that was just added. It is never evicted by the same call.
+	 */
+	synchronized
+	private void evict(CachedKey newKey){
+
+		// Two full turns of the clock clear all reference flags, and evict all other secret keys if need be
+		for(int i = 0, max = 2 * (size() + 1); i < max && size() > this.maximumSize; i++){
+			CachedKey cachedKey = advance();
+
+			if(cachedKey == null || cachedKey == newKey){
+				continue;
+			} // End if
+
+			if(cachedKey.referenced){
+				cachedKey.referenced = false;
+
+				continue;
+			}
+
+			this.contextHand.remove();
+		}
+	}
+
+	private CachedKey advance(){
+
+		if(this.contextHand == null || !this.contextHand.hasNext()){
+
+			if(this.descriptorHand == null || !this.descriptorHand.hasNext()){
+				this.descriptorHand = (this.secretKeys.values()).iterator();
+
+				if(!this.descriptorHand.hasNext()){
+					return null;
+				}
+			}
+
+			ConcurrentMap<String, CachedKey> contextKeys = this.descriptorHand.next();
+
+			this.contextHand = (contextKeys.values()).iterator();
+
+			if(!this.contextHand.hasNext()){
+				return null;
+			}
+		}
+
+		return this.contextHand.next();
+	}
+
+	public void invalidate(String secretKeyId){
+		Collection<KeyDescriptor> keyDescriptors = this.secretKeys.keySet();
+
+		keyDescriptors.removeIf(keyDescriptor -> Objects.equals(keyDescriptor.getSecretKeyId(), secretKeyId));
+	}
+
+	public void invalidateAll(){
+		this.secretKeys.clear();
+	}
+
+	/**
+	 * @return The number of cached secret keys.
+	 * The count is exact in the absence of concurrent updates.
+	 */
+	public int size(){
+		int result = 0;
+
+		Collection<ConcurrentMap<String, CachedKey>> values = this.secretKeys.values();
+		for(Map<String, CachedKey> contextKeys : values){
+			result += contextKeys.size();
+		}
+
+		return result;
+	}
+
+	public long getHitCount(){
+		return this.hitCount.sum();
+	}
+
+	public long getMissCount(){
+		return this.missCount.sum();
+	}
+
+	public int getMaximumSize(){
+		return this.maximumSize;
+	}
+
+	private void setMaximumSize(int maximumSize){
+
+		if(maximumSize < 1){
+			throw new IllegalArgumentException();
+		}
+
+		this.maximumSize = maximumSize;
+	}
+
+	static
+	private class CachedKey {
+
+		private SecretKey secretKey = null;
+
+		private Object version = null;
+
+		private volatile boolean referenced = false;
+
+
+		private CachedKey(SecretKey secretKey, Object version){
+			this.secretKey = Objects.requireNonNull(secretKey);
+			this.version = version;
+		}
+	}
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+	/**
+	 * The context of plain keys.
+	 * A key descriptor either derives secret keys or it does not, so plain keys never collide with derived keys.
+	 */
+	private static final String PLAIN_CONTEXT = "";
+}
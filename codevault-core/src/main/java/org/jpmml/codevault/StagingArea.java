@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A size-bounded holding area for decrypted class definitions.
+ * </p>
+ *
+ * The size of a staged class is the capacity of its buffer.
+ * Buffers that retain more memory than their content, such as slices of larger buffers, are copied into exact-size buffers before staging.
+ */
+class StagingArea {
+
+	private long capacity = 0L;
+
+	private AtomicLong size = new AtomicLong(0L);
+
+	private ConcurrentMap<String, ByteBuffer> buffers = new ConcurrentHashMap<>();
+
+
+	StagingArea(long capacity){
+
+		if(capacity < 0L){
+			throw new IllegalArgumentException();
+		}
+
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return <code>true</code> if the reservation was successful, <code>false</code> otherwise.
+	 */
+	boolean reserve(long size){
+
+		while(true){
+			long currentSize = this.size.get();
+
+			if(currentSize + size > this.capacity){
+				return false;
+			} // End if
+
+			if(this.size.compareAndSet(currentSize, currentSize + size)){
+				return true;
+			}
+		}
+	}
+
+	void release(long size){
+		this.size.addAndGet(-size);
+	}
+
+	/**
+	 * @param reservedSize The size that was reserved for this class.
+	 *
+	 * @return <code>true</code> if the class was staged, <code>false</code> otherwise.
+	 * If the class was not staged, then the reservation is released.
+	 */
+	boolean put(String name, ByteBuffer buffer, long reservedSize){
+		buffer = trim(buffer);
+
+		long size = buffer.capacity();
+
+		while(true){
+			long currentSize = this.size.get();
+
+			// A plaintext may be larger than its ciphertext
+			if(size > reservedSize && (currentSize - reservedSize + size) > this.capacity){
+				release(reservedSize);
+
+				return false;
+			} // End if
+
+			if(this.size.compareAndSet(currentSize, currentSize - reservedSize + size)){
+				break;
+			}
+		}
+
+		ByteBuffer prevBuffer = this.buffers.put(name, buffer);
+		if(prevBuffer != null){
+			release(prevBuffer.capacity());
+		}
+
+		return true;
+	}
+
+	boolean contains(String name){
+		return this.buffers.containsKey(name);
+	}
+
+	ByteBuffer take(String name){
+		ByteBuffer buffer = this.buffers.remove(name);
+
+		if(buffer != null){
+			release(buffer.capacity());
+		}
+
+		return buffer;
+	}
+
+	void clear(){
+		this.buffers.clear();
+
+		this.size.set(0L);
+	}
+
+	long getSize(){
+		return this.size.get();
+	}
+
+	static
+	private ByteBuffer trim(ByteBuffer buffer){
+
+		if(buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == (buffer.array()).length){
+			return buffer;
+		}
+
+		ByteBuffer result = ByteBuffer.allocate(buffer.remaining());
+		result.put(buffer.duplicate());
+		((Buffer)result).flip();
+
+		return result;
+	}
+}
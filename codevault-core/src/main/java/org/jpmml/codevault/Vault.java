@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * A packed vault, which holds many entries in a single chunked container.
+ * </p>
+ *
+ * <p>
+ * The plaintext of the container consists of an index, followed by the contents of all entries back to back:
+ * <pre>
+ * vault := indexSize(4) index data
+ * index := count(4) (nameLength(2) name(nameLength) size(4))* [hotCount(4)]
+ * </pre>
+ * The offset of an entry is the sum of the sizes of all preceding entries.
+ * The optional hot count is the number of leading entries that are needed at startup.
+ * </p>
+ *
+ * Reading an entry decrypts only the segments that overlap with it.
+ * If the vault is compressed, then every entry is compressed individually, and the index holds compressed sizes.
+ * Instances are safe for use by multiple concurrent threads.
+ *
+ * @see ChunkedFormat
+ */
+public class Vault {
+
+	private Key key = null;
+
+	private ByteBuffer content = null;
+
+	private ChunkedFormat.Header header = null;
+
+	private List<String> names = null;
+
+	private Map<String, Integer> indices = null;
+
+	private long[] offsets = null;
+
+	private int[] sizes = null;
+
+	private int hotCount = 0;
+
+	private String compression = null;
+
+
+	/**
+	 * @param content The container. Typically, a memory-mapped buffer.
+	 */
+	public Vault(Key key, ByteBuffer content) throws GeneralSecurityException {
+		this(key, content, null);
+	}
+
+	/**
+	 * @param content The container. Typically, a memory-mapped buffer.
+	 * @param compression The compression of individual entries, or <code>null</code>.
+	 */
+	public Vault(Key key, ByteBuffer content, String compression) throws GeneralSecurityException {
+		this.key = key;
+		this.compression = compression;
+		this.content = content.slice();
+		this.header = ChunkedFormat.Header.read(this.content);
+
+		// Fail fast on unsupported keys
+		ChunkedFormat.checkKey(key);
+
+		readIndex();
+	}
+
+	public boolean contains(String name){
+		return this.indices.containsKey(name);
+	}
+
+	/**
+	 * @return The names of all entries, in storage order.
+	 */
+	public List<String> list(){
+		return this.names;
+	}
+
+	/**
+	 * @return The plaintext of the entry, or <code>null</code> if this vault does not contain it.
+	 */
+	public ByteBuffer read(String name) throws GeneralSecurityException {
+		Integer index = this.indices.get(name);
+
+		if(index == null){
+			return null;
+		}
+
+		ByteBuffer result = read(this.offsets[index], this.sizes[index]);
+
+		if(this.compression != null){
+			result = CompressionUtil.decompress(this.compression, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The number of leading entries that are needed at startup.
+	 */
+	public int getHotCount(){
+		return this.hotCount;
+	}
+
+	/**
+	 * <p>
+	 * Reads the leading entries that are needed at startup, by decrypting the segments that hold them in a single sequential pass.
+	 * </p>
+	 *
+	 * @return A map of entry names to plaintexts, in storage order.
+	 */
+	public Map<String, ByteBuffer> readHot() throws GeneralSecurityException {
+		int hotCount = this.hotCount;
+
+		if(hotCount == 0){
+			return Collections.emptyMap();
+		}
+
+		long begin = this.offsets[0];
+		long end = this.offsets[hotCount - 1] + this.sizes[hotCount - 1];
+
+		if((end - begin) > Integer.MAX_VALUE){
+			throw new GeneralSecurityException("Hot entries exceed the maximum buffer size");
+		}
+
+		ByteBuffer buffer = read(begin, (int)(end - begin));
+
+		Map<String, ByteBuffer> result = new LinkedHashMap<>(2 * hotCount);
+
+		for(int i = 0; i < hotCount; i++){
+			int position = (int)(this.offsets[i] - begin);
+
+			((Buffer)buffer).limit(position + this.sizes[i]);
+			((Buffer)buffer).position(position);
+
+			ByteBuffer entryBuffer = buffer.slice();
+
+			if(this.compression != null){
+				entryBuffer = CompressionUtil.decompress(this.compression, entryBuffer);
+			}
+
+			result.put(this.names.get(i), entryBuffer);
+		}
+
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Loads the container into physical memory in a single sequential pass, if it is memory-mapped.
+	 * </p>
+	 */
+	public void prefetch(){
+		ByteBuffer content = this.content;
+
+		if(content instanceof MappedByteBuffer){
+			MappedByteBuffer mappedContent = (MappedByteBuffer)content;
+
+			mappedContent.load();
+		}
+	}
+
+	private void readIndex() throws GeneralSecurityException {
+		ByteBuffer buffer = read(0, 4);
+
+		int indexSize = buffer.getInt();
+		if(indexSize < 4 || (4L + indexSize) > this.header.getLength()){
+			throw new GeneralSecurityException("Malformed vault index");
+		}
+
+		buffer = read(4, indexSize);
+
+		try {
+			int count = buffer.getInt();
+			if(count < 0 || count > (indexSize / 6)){
+				throw new GeneralSecurityException("Malformed vault index");
+			}
+
+			String[] names = new String[count];
+			Map<String, Integer> indices = new HashMap<>(2 * count);
+			long[] offsets = new long[count];
+			int[] sizes = new int[count];
+
+			long offset = 4L + indexSize;
+
+			for(int i = 0; i < count; i++){
+				byte[] nameBytes = new byte[buffer.getShort() & 0xFFFF];
+
+				buffer.get(nameBytes);
+
+				int size = buffer.getInt();
+				if(size < 0){
+					throw new GeneralSecurityException("Malformed vault index");
+				}
+
+				names[i] = new String(nameBytes, StandardCharsets.UTF_8);
+				indices.put(names[i], i);
+				offsets[i] = offset;
+				sizes[i] = size;
+
+				offset += size;
+			}
+
+			if(offset > this.header.getLength()){
+				throw new GeneralSecurityException("Malformed vault index");
+			}
+
+			int hotCount = 0;
+
+			if(buffer.remaining() >= 4){
+				hotCount = buffer.getInt();
+
+				if(hotCount < 0 || hotCount > count){
+					throw new GeneralSecurityException("Malformed vault index");
+				}
+			}
+
+			this.names = Collections.unmodifiableList(Arrays.asList(names));
+			this.indices = indices;
+			this.offsets = offsets;
+			this.sizes = sizes;
+			this.hotCount = hotCount;
+		} catch(BufferUnderflowException bue){
+			throw new GeneralSecurityException("Malformed vault index", bue);
+		}
+	}
+
+	private ByteBuffer read(long offset, int size) throws GeneralSecurityException {
+		ChunkedFormat.Header header = this.header;
+
+		int chunkSize = header.getChunkSize();
+
+		int begin = (int)(offset / chunkSize);
+		int end = (size > 0 ? (int)((offset + size - 1) / chunkSize) : begin);
+
+		long beginOffset = header.getSegmentOffset(begin);
+		long endOffset = Math.min(header.getSegmentOffset(end) + chunkSize, header.getLength());
+
+		ByteBuffer result = ByteBuffer.allocate((int)(endOffset - beginOffset));
+
+		for(int i = begin; i <= end; i++){
+			ByteBuffer segment = header.getSegment(this.content, i);
+
+			try {
+				ChunkedFormat.decryptSegment(this.key, header, i, segment, result);
+			} catch(GeneralSecurityException gse){
+				throw new GeneralSecurityException("Error decrypting segment " + i, gse);
+			}
+		}
+
+		((Buffer)result).position((int)(offset - beginOffset));
+		((Buffer)result).limit(result.position() + size);
+
+		return result.slice();
+	}
+
+	static
+	public byte[] encrypt(Key key, SortedMap<String, byte[]> entries, int chunkSize) throws GeneralSecurityException {
+		return encrypt(key, entries, chunkSize, null);
+	}
+
+	/**
+	 * @param entries A map of entry names to entry contents.
+	 * Entries are stored in map iteration order.
+	 * @param compression The compression of individual entries, or <code>null</code>.
+	 */
+	static
+	public byte[] encrypt(Key key, SortedMap<String, byte[]> entries, int chunkSize, String compression) throws GeneralSecurityException {
+		return encrypt(key, entries, chunkSize, compression, 0);
+	}
+
+	/**
+	 * @param entries A map of entry names to entry contents.
+	 * Entries are stored in map iteration order.
+	 * @param compression The compression of individual entries, or <code>null</code>.
+	 * @param hotCount The number of leading entries that are needed at startup.
+	 *
+	 * @see #readHot()
+	 */
+	static
+	public byte[] encrypt(Key key, SortedMap<String, byte[]> entries, int chunkSize, String compression, int hotCount) throws GeneralSecurityException {
+
+		if(hotCount < 0 || hotCount > entries.size()){
+			throw new IllegalArgumentException("Invalid hot count " + hotCount);
+		} // End if
+
+		if(compression != null){
+			SortedMap<String, byte[]> compressedEntries = new TreeMap<>(entries.comparator());
+
+			for(Map.Entry<String, byte[]> entry : entries.entrySet()){
+				compressedEntries.put(entry.getKey(), CompressionUtil.compress(compression, entry.getValue()));
+			}
+
+			entries = compressedEntries;
+		}
+
+		ByteArrayOutputStream indexBuffer = new ByteArrayOutputStream();
+
+		long dataSize = 0;
+
+		try(DataOutputStream os = new DataOutputStream(indexBuffer)){
+			os.writeInt(entries.size());
+
+			for(Map.Entry<String, byte[]> entry : entries.entrySet()){
+				byte[] nameBytes = (entry.getKey()).getBytes(StandardCharsets.UTF_8);
+				byte[] value = entry.getValue();
+
+				if(nameBytes.length > 0xFFFF){
+					throw new IllegalArgumentException("Entry name " + entry.getKey() + " is too long");
+				}
+
+				os.writeShort(nameBytes.length);
+				os.write(nameBytes);
+				os.writeInt(value.length);
+
+				dataSize += value.length;
+			}
+
+			// Omitted by default, for compatibility with older readers
+			if(hotCount > 0){
+				os.writeInt(hotCount);
+			}
+		} catch(IOException ioe){
+			throw new UncheckedIOException(ioe);
+		}
+
+		byte[] index = indexBuffer.toByteArray();
+
+		long size = 4L + index.length + dataSize;
+		if(size > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Vault size " + size + " exceeds the maximum array size");
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int)size);
+		buffer.putInt(index.length);
+		buffer.put(index);
+
+		for(byte[] value : entries.values()){
+			buffer.put(value);
+		}
+
+		return ChunkedFormat.encrypt(key, buffer.array(), chunkSize);
+	}
+
+	public static final String FORMAT = "vault";
+
+	public static final String DEFAULT_NAME = "META-INF/CODEVAULT.VAULT";
+
+	/**
+	 * The default chunk size, which is comparable to the size of a typical class file.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 4 * 1024;
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedFormatTest {
+
+	@Test
+	public void encryptAndDecrypt() throws Exception {
+		SecretKey secretKey = generateKey();
+
+		int[] lengths = {0, 1, 100, 1024, 1025, 10000};
+
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+		try {
+			for(int length : lengths){
+				byte[] content = createContent(length);
+
+				byte[] encryptedContent = ChunkedFormat.encrypt(secretKey, content, 1024);
+
+				assertTrue(ChunkedFormat.isChunked(ByteBuffer.wrap(encryptedContent)));
+
+				assertEquals(ByteBuffer.wrap(content), ChunkedFormat.decrypt(secretKey, ByteBuffer.wrap(encryptedContent), null));
+				assertEquals(ByteBuffer.wrap(content), ChunkedFormat.decrypt(secretKey, ByteBuffer.wrap(encryptedContent), executorService));
+
+				try(InputStream is = new ChunkedInputStream(secretKey, new ByteArrayInputStream(encryptedContent))){
+					assertArrayEquals(content, readFully(is));
+				}
+			}
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void seek() throws Exception {
+		SecretKey secretKey = generateKey();
+
+		byte[] content = createContent(10000);
+
+		byte[] encryptedContent = ChunkedFormat.encrypt(secretKey, content, 1024);
+
+		try(SeekableByteChannel channel = new ChunkedChannel(secretKey, ByteBuffer.wrap(encryptedContent).asReadOnlyBuffer())){
+			assertEquals(content.length, channel.size());
+
+			int[] positions = {9000, 0, 1020, 5000, 9990};
+
+			for(int position : positions){
+				channel.position(position);
+
+				ByteBuffer buffer = ByteBuffer.allocate(100);
+
+				channel.read(buffer);
+
+				buffer.flip();
+
+				int length = Math.min(100, content.length - position);
+
+				assertEquals(ByteBuffer.wrap(content, position, length), buffer);
+				assertEquals(position + length, channel.position());
+			}
+
+			channel.position(content.length);
+
+			assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+		}
+	}
+
+	@Test
+	public void tamper() throws Exception {
+		SecretKey secretKey = generateKey();
+
+		byte[] content = createContent(5000);
+
+		byte[] encryptedContent = ChunkedFormat.encrypt(secretKey, content, 1024);
+
+		// Flip a bit in the third segment
+		encryptedContent[ChunkedFormat.HEADER_SIZE + 2 * (1024 + ChunkedFormat.TAG_SIZE) + 10] ^= 1;
+
+		try {
+			ChunkedFormat.decrypt(secretKey, ByteBuffer.wrap(encryptedContent), null);
+
+			fail();
+		} catch(GeneralSecurityException gse){
+			// Ignored
+		}
+
+		try(SeekableByteChannel channel = new ChunkedChannel(secretKey, ByteBuffer.wrap(encryptedContent))){
+			ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+			// The first segment is intact
+			assertEquals(1024, channel.read(buffer));
+
+			buffer.clear();
+
+			channel.position(2 * 1024);
+
+			try {
+				channel.read(buffer);
+
+				fail();
+			} catch(IOException ioe){
+				// Ignored
+			}
+		}
+	}
+
+	static
+	private SecretKey generateKey() throws GeneralSecurityException {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		return keyGenerator.generateKey();
+	}
+
+	static
+	private byte[] createContent(int length){
+		byte[] result = new byte[length];
+
+		for(int i = 0; i < result.length; i++){
+			result[i] = (byte)(i * 31);
+		}
+
+		return result;
+	}
+
+	static
+	private byte[] readFully(InputStream is) throws IOException {
+		ByteBuffer buffer = IOUtil.readFully(is, 0);
+
+		byte[] result = new byte[buffer.remaining()];
+
+		buffer.get(result);
+
+		return result;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CodeVaultUtilTest {
+
+	@Test
+	public void encryptAndDecrypt() throws Exception {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		for(int i = 0; i < 3; i++){
+			byte[] content = ("Hello World #" + i).getBytes(StandardCharsets.UTF_8);
+
+			byte[] encryptedContent = CodeVaultUtil.encrypt(secretKey, content);
+
+			assertFalse(Arrays.equals(content, encryptedContent));
+
+			assertArrayEquals(content, CodeVaultUtil.decrypt(secretKey, encryptedContent));
+		}
+
+		byte[] encryptedContent = CodeVaultUtil.encrypt(secretKey, "Hello World".getBytes(StandardCharsets.UTF_8));
+
+		try {
+			CodeVaultUtil.decrypt(secretKey, Arrays.copyOf(encryptedContent, encryptedContent.length - 1));
+
+			fail();
+		} catch(IllegalBlockSizeException ibse){
+			// Ignored
+		}
+
+		assertArrayEquals("Hello World".getBytes(StandardCharsets.UTF_8), CodeVaultUtil.decrypt(secretKey, encryptedContent));
+	}
+
+	@Test
+	public void encryptAndDecryptBuffer() throws Exception {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		byte[] content = new byte[1000];
+		for(int i = 0; i < content.length; i++){
+			content[i] = (byte)i;
+		}
+
+		byte[] encryptedContent = CodeVaultUtil.encrypt(secretKey, content);
+
+		ByteBuffer buffer = ByteBuffer.wrap(encryptedContent.clone());
+
+		ByteBuffer decryptedBuffer = CodeVaultUtil.decrypt(secretKey, buffer);
+
+		assertSame(buffer.array(), decryptedBuffer.array());
+
+		assertEquals(content.length, decryptedBuffer.remaining());
+		assertEquals(ByteBuffer.wrap(content), decryptedBuffer);
+
+		ByteBuffer encryptedBuffer = CodeVaultUtil.encrypt(secretKey, ByteBuffer.wrap(content).asReadOnlyBuffer());
+
+		assertEquals(ByteBuffer.wrap(encryptedContent), encryptedBuffer);
+
+		byte[] array = new byte[2 * content.length];
+		System.arraycopy(content, 0, array, 0, content.length);
+		Arrays.fill(array, content.length, array.length, (byte)0x7F);
+
+		// Padding makes the output larger than the input
+		encryptedBuffer = CodeVaultUtil.encrypt(secretKey, ByteBuffer.wrap(array, 0, content.length));
+
+		assertEquals(ByteBuffer.wrap(encryptedContent), encryptedBuffer);
+
+		for(int i = content.length; i < array.length; i++){
+			assertEquals((byte)0x7F, array[i]);
+		}
+
+		ByteBuffer directBuffer = ByteBuffer.allocateDirect(encryptedContent.length);
+
+		assertEquals(content.length, CodeVaultUtil.decrypt(secretKey, ByteBuffer.wrap(encryptedContent), directBuffer));
+
+		directBuffer.flip();
+
+		assertEquals(ByteBuffer.wrap(content), directBuffer);
+	}
+
+	@Test
+	public void compressAndEncrypt() throws Exception {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		byte[] content = new byte[100000];
+		for(int i = 0; i < content.length; i++){
+			content[i] = (byte)('a' + (i % 26));
+		}
+
+		KeyDescriptor[] keyDescriptors = {
+			(KeyDescriptor.of("AES", "key")).withCompression(CompressionUtil.DEFLATE),
+			((KeyDescriptor.of("AES", "key")).withFormat(ChunkedFormat.FORMAT)).withCompression(CompressionUtil.DEFLATE)
+		};
+
+		for(KeyDescriptor keyDescriptor : keyDescriptors){
+			byte[] compressedContent = CompressionUtil.compress(keyDescriptor.getCompression(), content);
+
+			assertTrue(compressedContent.length < (content.length / 10));
+
+			byte[] encryptedContent = (keyDescriptor.isChunked() ? ChunkedFormat.encrypt(secretKey, compressedContent, 1024) : CodeVaultUtil.encrypt(secretKey, compressedContent));
+
+			assertEquals(ByteBuffer.wrap(content), CodeVaultUtil.decrypt(keyDescriptor, secretKey, ByteBuffer.wrap(encryptedContent.clone())));
+
+			try(InputStream is = CodeVaultUtil.decrypt(keyDescriptor, secretKey, new ByteArrayInputStream(encryptedContent))){
+				assertEquals(ByteBuffer.wrap(content), IOUtil.readFully(is, -1));
+			}
+		}
+	}
+
+	@Test
+	public void encryptAndDecryptTransformation() throws Exception {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		byte[] content = new byte[1000];
+		for(int i = 0; i < content.length; i++){
+			content[i] = (byte)i;
+		}
+
+		String[] transformations = {"AES/GCM/NoPadding", "AES/CTR/NoPadding", "AES/CBC/PKCS5Padding", "AES/ECB/PKCS5Padding"};
+
+		for(String transformation : transformations){
+			KeyDescriptor keyDescriptor = (KeyDescriptor.of(null, "key")).withTransformation(transformation);
+
+			assertEquals("AES", keyDescriptor.getKeyAlgorithm());
+
+			byte[] encryptedContent = CodeVaultUtil.encrypt(transformation, secretKey, content);
+
+			// The IV is random
+			if(!transformation.contains("/ECB/")){
+				assertFalse(Arrays.equals(encryptedContent, CodeVaultUtil.encrypt(transformation, secretKey, content)));
+			}
+
+			assertEquals(ByteBuffer.wrap(content), CodeVaultUtil.decrypt(keyDescriptor, secretKey, ByteBuffer.wrap(encryptedContent.clone())));
+
+			try(InputStream is = CodeVaultUtil.decrypt(keyDescriptor, secretKey, new ByteArrayInputStream(encryptedContent))){
+				assertEquals(ByteBuffer.wrap(content), IOUtil.readFully(is, -1));
+			}
+		}
+
+		byte[] encryptedContent = CodeVaultUtil.encrypt("AES/GCM/NoPadding", secretKey, content);
+		encryptedContent[encryptedContent.length / 2] ^= 1;
+
+		try {
+			CodeVaultUtil.decrypt("AES/GCM/NoPadding", secretKey, ByteBuffer.wrap(encryptedContent));
+
+			fail();
+		} catch(AEADBadTagException abte){
+			// Ignored
+		}
+	}
+}
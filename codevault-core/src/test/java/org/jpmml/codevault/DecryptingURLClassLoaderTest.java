@@ -3,16 +3,35 @@
  */
 package org.jpmml.codevault;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.instrument.IllegalClassFormatException;
 import java.lang.reflect.Field;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
@@ -28,7 +47,13 @@ import org.jpmml.codemodel.JClassFile;
 import org.jpmml.codemodel.JarCodeWriter;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class DecryptingURLClassLoaderTest {
@@ -108,13 +133,733 @@ public class DecryptingURLClassLoaderTest {
 			}
 		}
 
-		try(URLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+		ClassLoadingStatistics statistics = new ClassLoadingStatistics(keyRegistry);
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			classLoader.addClassLoadingListener(statistics);
+
+			assertNotNull(classLoader.loadClass("a.A"));
+			assertNotNull(classLoader.loadClass("b.B"));
+			assertNotNull(classLoader.loadClass("c.C"));
+		}
+
+		assertEquals(2, statistics.getEncryptedLoadCount());
+		assertEquals(1, statistics.getPassThroughLoadCount());
+		assertEquals(0, statistics.getFailureCount());
+
+		assertTrue(statistics.getDecryptedBytes() > 0);
+		assertTrue(statistics.getDecryptTime() > 0);
+	}
+
+	@Test
+	public void warmUp() throws Exception {
+		JCodeModel codeModel = new JCodeModel();
+
+		JDefinedClass clazzA = codeModel._package("a")._class("A");
+		JDefinedClass clazzB = codeModel._package("b")._class("B")._extends(clazzA);
+		JDefinedClass clazzC = codeModel._package("c")._class("C");
+
+		CompilerUtil.compile(codeModel);
+
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		encrypt(keyRegistry, clazzA, secretKey);
+		encrypt(keyRegistry, clazzC, secretKey);
+
+		File tmpFile = File.createTempFile("codevault", ".jar");
+
+		URL[] urls = {(tmpFile.toURI()).toURL()};
+
+		try(OutputStream os = new FileOutputStream(tmpFile)){
+			Manifest manifest = keyRegistry.getManifest();
+
+			CodeWriter codeWriter = new JarCodeWriter(os, manifest);
+
+			codeModel.build(codeWriter);
+		}
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			CompletableFuture<Integer> future = classLoader.warmUp(0L);
+
+			assertEquals((Integer)0, future.get());
+
+			assertNotNull(classLoader.loadClass("b.B"));
+		}
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			CompletableFuture<Integer> future = classLoader.warmUp(Long.MAX_VALUE);
+
+			assertEquals((Integer)2, future.get());
+
+			// Replaces the previous staging area
+			future = classLoader.warmUp(Long.MAX_VALUE);
+
+			assertEquals((Integer)2, future.get());
+
 			assertNotNull(classLoader.loadClass("a.A"));
 			assertNotNull(classLoader.loadClass("b.B"));
 			assertNotNull(classLoader.loadClass("c.C"));
 		}
 	}
 
+	@Test
+	public void preload() throws Exception {
+		JCodeModel codeModel = new JCodeModel();
+
+		JDefinedClass clazzA = codeModel._package("a")._class("A");
+		JDefinedClass clazzB = codeModel._package("b")._class("B")._extends(clazzA);
+		JDefinedClass clazzC = codeModel._package("c")._class("C");
+
+		CompilerUtil.compile(codeModel);
+
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		encrypt(keyRegistry, clazzA, secretKey);
+		encrypt(keyRegistry, clazzB, secretKey);
+
+		File tmpFile = File.createTempFile("codevault", ".jar");
+
+		URL[] urls = {(tmpFile.toURI()).toURL()};
+
+		try(OutputStream os = new FileOutputStream(tmpFile)){
+			Manifest manifest = keyRegistry.getManifest();
+
+			CodeWriter codeWriter = new JarCodeWriter(os, manifest);
+
+			codeModel.build(codeWriter);
+		}
+
+		ClassLoadingStatistics statistics = new ClassLoadingStatistics(keyRegistry);
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			classLoader.addClassLoadingListener(statistics);
+
+			CompletableFuture<PreloadResult> future = classLoader.preload(Arrays.asList("b.B", "c.C", "a.A", "d.D"));
+
+			PreloadResult result = future.get();
+
+			assertFalse(result.isSuccessful());
+
+			Map<String, Class<?>> classes = result.getClasses();
+
+			// Superclasses first
+			assertEquals(Arrays.asList("a.A", "b.B", "c.C"), new ArrayList<>(classes.keySet()));
+
+			assertSame(classes.get("a.A"), (classes.get("b.B")).getSuperclass());
+			assertSame(classes.get("b.B"), classLoader.loadClass("b.B"));
+
+			Map<String, Throwable> failures = result.getFailures();
+
+			assertEquals(Collections.singleton("d.D"), failures.keySet());
+			assertTrue(failures.get("d.D") instanceof ClassNotFoundException);
+		}
+
+		assertEquals(2, statistics.getEncryptedLoadCount());
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			CompletableFuture<PreloadResult> future = classLoader.preloadPackage("b");
+
+			PreloadResult result = future.get();
+
+			assertTrue(result.isSuccessful());
+
+			assertEquals(Collections.singleton("b.B"), (result.getClasses()).keySet());
+		}
+	}
+
+	@Test
+	public void getResource() throws Exception {
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		keyRegistry.putEncodedKey("resource-key", secretKey.getEncoded());
+
+		Attributes attributes = new Attributes();
+		attributes.put(AttributeNames.CODEVAULT_ALGORITHM, secretKey.getAlgorithm());
+		attributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "resource-key");
+
+		keyRegistry.addAttributes("data/encrypted.txt", attributes);
+
+		byte[] content = new byte[100000];
+		for(int i = 0; i < content.length; i++){
+			content[i] = (byte)('a' + (i % 26));
+		}
+
+		File tmpFile = File.createTempFile("codevault", ".jar");
+
+		URL[] urls = {(tmpFile.toURI()).toURL()};
+
+		try(JarOutputStream os = new JarOutputStream(new FileOutputStream(tmpFile))){
+			os.putNextEntry(new JarEntry("data/encrypted.txt"));
+			os.write(CodeVaultUtil.encrypt(secretKey, content));
+			os.closeEntry();
+
+			os.putNextEntry(new JarEntry("data/plain.txt"));
+			os.write(content);
+			os.closeEntry();
+		}
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+
+			try(InputStream is = classLoader.getResourceAsStream("data/encrypted.txt")){
+				assertArrayEquals(content, readFully(is));
+			}
+
+			try(InputStream is = (classLoader.getResource("data/encrypted.txt")).openStream()){
+				assertArrayEquals(content, readFully(is));
+			}
+
+			try(InputStream is = classLoader.getResourceAsStream("data/plain.txt")){
+				assertArrayEquals(content, readFully(is));
+			}
+		}
+	}
+
+	@Test
+	public void addURL() throws Exception {
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		keyRegistry.putEncodedKey("resource-key", secretKey.getEncoded());
+
+		Attributes attributes = new Attributes();
+		attributes.put(AttributeNames.CODEVAULT_ALGORITHM, secretKey.getAlgorithm());
+		attributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "resource-key");
+
+		keyRegistry.addAttributes("data/encrypted.txt", attributes);
+
+		byte[] content = new byte[1000000];
+		for(int i = 0; i < content.length; i++){
+			content[i] = (byte)('a' + (i % 26));
+		}
+
+		File tmpFile = File.createTempFile("codevault", ".jar");
+		File otherTmpFile = File.createTempFile("codevault", ".jar");
+
+		URL[] urls = {(tmpFile.toURI()).toURL()};
+
+		try(JarOutputStream os = new JarOutputStream(new FileOutputStream(tmpFile))){
+			os.putNextEntry(new JarEntry("data/encrypted.txt"));
+			os.write(CodeVaultUtil.encrypt(secretKey, content));
+			os.closeEntry();
+		}
+
+		try(JarOutputStream os = new JarOutputStream(new FileOutputStream(otherTmpFile))){
+			os.putNextEntry(new JarEntry("data/plain.txt"));
+			os.write(content);
+			os.closeEntry();
+		}
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+
+			try(InputStream is = classLoader.getResourceAsStream("data/encrypted.txt")){
+				byte[] head = new byte[26];
+
+				assertEquals(head.length, is.read(head));
+
+				// The archive that is being read must stay open
+				classLoader.addURL((otherTmpFile.toURI()).toURL());
+
+				byte[] tail = readFully(is);
+
+				assertEquals(content.length, head.length + tail.length);
+				assertArrayEquals(Arrays.copyOfRange(content, head.length, content.length), tail);
+			}
+
+			try(InputStream is = classLoader.getResourceAsStream("data/plain.txt")){
+				assertArrayEquals(content, readFully(is));
+			}
+
+			try(InputStream is = classLoader.getResourceAsStream("data/encrypted.txt")){
+				assertArrayEquals(content, readFully(is));
+			}
+		}
+	}
+
+	@Test
+	public void loadFromVault() throws Exception {
+		JCodeModel codeModel = new JCodeModel();
+
+		JDefinedClass clazzA = codeModel._package("a")._class("A");
+		JDefinedClass clazzB = codeModel._package("b")._class("B")._extends(clazzA);
+		JDefinedClass clazzC = codeModel._package("c")._class("C");
+
+		CompilerUtil.compile(codeModel);
+
+		SortedMap<String, byte[]> entries = new TreeMap<>();
+		entries.put("a/A.class", getBytes(clazzA));
+		entries.put("b/B.class", getBytes(clazzB));
+		entries.put("c/C.class", getBytes(clazzC));
+		entries.put("data/vault.txt", "Hello World".getBytes(StandardCharsets.UTF_8));
+
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		keyRegistry.putEncodedKey("vault-key", secretKey.getEncoded());
+
+		Attributes attributes = new Attributes();
+		attributes.put(AttributeNames.CODEVAULT_ALGORITHM, secretKey.getAlgorithm());
+		attributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "vault-key");
+		attributes.put(AttributeNames.CODEVAULT_FORMAT, Vault.FORMAT);
+
+		keyRegistry.addAttributes(Vault.DEFAULT_NAME, attributes);
+
+		// A small chunk size makes entries straddle segment boundaries
+		byte[] content = Vault.encrypt(secretKey, entries, 100);
+
+		File tmpFile = File.createTempFile("codevault", ".jar");
+
+		URL[] urls = {(tmpFile.toURI()).toURL()};
+
+		try(JarOutputStream os = new JarOutputStream(new FileOutputStream(tmpFile))){
+			CRC32 crc = new CRC32();
+			crc.update(content);
+
+			JarEntry jarEntry = new JarEntry(Vault.DEFAULT_NAME);
+			jarEntry.setMethod(ZipEntry.STORED);
+			jarEntry.setSize(content.length);
+			jarEntry.setCompressedSize(content.length);
+			jarEntry.setCrc(crc.getValue());
+
+			os.putNextEntry(jarEntry);
+			os.write(content);
+			os.closeEntry();
+		}
+
+		ClassLoadingStatistics statistics = new ClassLoadingStatistics(keyRegistry);
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			classLoader.addClassLoadingListener(statistics);
+
+			assertNotNull(classLoader.loadClass("b.B"));
+			assertNotNull(classLoader.loadClass("c.C"));
+
+			try(InputStream is = classLoader.getResourceAsStream("data/vault.txt")){
+				assertArrayEquals("Hello World".getBytes(StandardCharsets.UTF_8), readFully(is));
+			}
+		}
+
+		assertEquals(3, statistics.getEncryptedLoadCount());
+		assertEquals(0, statistics.getFailureCount());
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			CompletableFuture<Integer> future = classLoader.warmUp(Long.MAX_VALUE);
+
+			assertEquals((Integer)3, future.get());
+
+			assertNotNull(classLoader.loadClass("b.B"));
+		}
+
+		KeyRegistry lateKeyRegistry = new KeyRegistry();
+		lateKeyRegistry.addAttributes(Vault.DEFAULT_NAME, attributes);
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, lateKeyRegistry)){
+
+			try {
+				classLoader.loadClass("c.C");
+
+				fail();
+			} catch(ClassNotFoundException cnfe){
+				// Ignored
+			}
+
+			// The secret key is provisioned after the vaults were first opened
+			lateKeyRegistry.putEncodedKey("vault-key", secretKey.getEncoded());
+
+			assertNotNull(classLoader.loadClass("c.C"));
+		}
+	}
+
+	@Test
+	public void loadFromProfiledVault() throws Exception {
+		JCodeModel codeModel = new JCodeModel();
+
+		JDefinedClass clazzA = codeModel._package("a")._class("A");
+		JDefinedClass clazzB = codeModel._package("b")._class("B")._extends(clazzA);
+		JDefinedClass clazzC = codeModel._package("c")._class("C");
+
+		CompilerUtil.compile(codeModel);
+
+		SortedMap<String, byte[]> entries = new TreeMap<>();
+		entries.put("a/A.class", getBytes(clazzA));
+		entries.put("b/B.class", getBytes(clazzB));
+		entries.put("c/C.class", getBytes(clazzC));
+
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		keyRegistry.putEncodedKey("vault-key", secretKey.getEncoded());
+
+		Attributes attributes = new Attributes();
+		attributes.put(AttributeNames.CODEVAULT_ALGORITHM, secretKey.getAlgorithm());
+		attributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "vault-key");
+		attributes.put(AttributeNames.CODEVAULT_FORMAT, Vault.FORMAT);
+
+		keyRegistry.addAttributes(Vault.DEFAULT_NAME, attributes);
+
+		File tmpFile = File.createTempFile("codevault", ".jar");
+
+		URL[] urls = {(tmpFile.toURI()).toURL()};
+
+		writeVault(tmpFile, Vault.encrypt(secretKey, entries, 100));
+
+		LoadOrderProfile profile = new LoadOrderProfile();
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			classLoader.addClassLoadingListener(profile);
+
+			assertNotNull(classLoader.loadClass("c.C"));
+			assertNotNull(classLoader.loadClass("b.B"));
+		}
+
+		// The superclass completes loading first
+		assertEquals(Arrays.asList("c/C.class", "a/A.class", "b/B.class"), profile.getEntryNames());
+
+		File profileFile = File.createTempFile("codevault", ".profile");
+
+		profile.write(profileFile);
+
+		profile = LoadOrderProfile.read(profileFile);
+
+		assertEquals(Arrays.asList("c/C.class", "a/A.class", "b/B.class"), profile.getEntryNames());
+
+		List<String> profileNames = profile.getEntryNames();
+
+		SortedMap<String, byte[]> profiledEntries = new TreeMap<>(Comparator.comparing(profileNames::indexOf));
+		profiledEntries.putAll(entries);
+
+		byte[] content = Vault.encrypt(secretKey, profiledEntries, 100, null, 2);
+
+		Vault vault = new Vault(secretKey, ByteBuffer.wrap(content));
+
+		assertEquals(profileNames, vault.list());
+		assertEquals(2, vault.getHotCount());
+
+		Map<String, ByteBuffer> hotBuffers = vault.readHot();
+
+		assertEquals(profileNames.subList(0, 2), new ArrayList<>(hotBuffers.keySet()));
+		assertEquals(vault.read("a/A.class"), hotBuffers.get("a/A.class"));
+
+		writeVault(tmpFile, content);
+
+		ClassLoadingStatistics statistics = new ClassLoadingStatistics(keyRegistry);
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			classLoader.addClassLoadingListener(statistics);
+
+			// Room for hot classes only
+			long capacity = (entries.get("c/C.class")).length + (entries.get("a/A.class")).length;
+
+			CompletableFuture<Integer> future = classLoader.warmUp(capacity);
+
+			assertEquals((Integer)2, future.get());
+
+			assertNotNull(classLoader.loadClass("c.C"));
+			assertNotNull(classLoader.loadClass("a.A"));
+
+			// Hot classes are staged first, and do not need decrypting
+			assertEquals(0, statistics.getDecryptTime());
+
+			assertNotNull(classLoader.loadClass("b.B"));
+
+			assertTrue(statistics.getDecryptTime() > 0);
+		}
+
+		assertEquals(3, statistics.getEncryptedLoadCount());
+	}
+
+	@Test
+	public void loadFromEncryptedArchive() throws Exception {
+		JCodeModel codeModel = new JCodeModel();
+
+		JDefinedClass clazzA = codeModel._package("a")._class("A");
+		JDefinedClass clazzB = codeModel._package("b")._class("B")._extends(clazzA);
+		JDefinedClass clazzC = codeModel._package("c")._class("C");
+
+		CompilerUtil.compile(codeModel);
+
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		Manifest manifest = new Manifest();
+
+		Attributes mainAttributes = manifest.getMainAttributes();
+		mainAttributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		mainAttributes.put(AttributeNames.CODEVAULT_ALGORITHM, secretKey.getAlgorithm());
+		mainAttributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "archive-key");
+
+		File encryptedFile = File.createTempFile("codevault", ".jar");
+		File plainFile = File.createTempFile("codevault", ".jar");
+
+		URL[] urls = {(plainFile.toURI()).toURL(), (encryptedFile.toURI()).toURL()};
+
+		try(JarOutputStream os = new JarOutputStream(new FileOutputStream(encryptedFile))){
+			os.putNextEntry(new JarEntry("META-INF/CODEVAULT.MF"));
+			manifest.write(os);
+			os.closeEntry();
+
+			os.putNextEntry(new JarEntry("a/A.class"));
+			os.write(CodeVaultUtil.encrypt(secretKey, getBytes(clazzA)));
+			os.closeEntry();
+
+			os.putNextEntry(new JarEntry("b/B.class"));
+			os.write(CodeVaultUtil.encrypt(secretKey, getBytes(clazzB)));
+			os.closeEntry();
+		}
+
+		try(JarOutputStream os = new JarOutputStream(new FileOutputStream(plainFile))){
+			// Shadowed by the origin of the protected entry
+			os.putNextEntry(new JarEntry("b/B.class"));
+			os.write(getBytes(clazzB));
+			os.closeEntry();
+
+			os.putNextEntry(new JarEntry("c/C.class"));
+			os.write(getBytes(clazzC));
+			os.closeEntry();
+		}
+
+		KeyRegistry keyRegistry = new KeyRegistry();
+		keyRegistry.putEncodedKey("archive-key", secretKey.getEncoded());
+
+		try(URLClassLoader classLoader = new URLClassLoader(urls, null)){
+			keyRegistry.load(classLoader);
+		}
+
+		EntryOwnership ownership = keyRegistry.getOwnership();
+
+		assertTrue(ownership.isComplete());
+		assertEquals(2, ownership.size());
+
+		assertTrue(ownership.containsClass("a.A"));
+		assertFalse(ownership.containsClass("c.C"));
+		assertFalse(ownership.containsClass("java.lang.Object"));
+
+		assertEquals(KeyDescriptor.NONE, keyRegistry.getKeyDescriptor("java/lang/Object.class"));
+
+		assertEquals(Collections.singletonList(urls[1]), keyRegistry.getOrigins("a/A.class"));
+		assertEquals(Collections.singletonList(urls[1]), keyRegistry.getOrigins("b/B.class"));
+		assertEquals(Collections.emptyList(), keyRegistry.getOrigins("c/C.class"));
+
+		ClassLoadingStatistics statistics = new ClassLoadingStatistics(keyRegistry);
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			classLoader.addClassLoadingListener(statistics);
+
+			assertNotNull(classLoader.loadClass("b.B"));
+			assertNotNull(classLoader.loadClass("c.C"));
+			assertSame(Object.class, classLoader.loadClass("java.lang.Object"));
+		}
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			// The plaintext copy is not wrapped
+			try(InputStream is = (classLoader.getResource("b/B.class")).openStream()){
+				assertArrayEquals(getBytes(clazzB), readFully(is));
+			}
+
+			List<URL> resourceUrls = Collections.list(classLoader.getResources("b/B.class"));
+
+			assertEquals(2, resourceUrls.size());
+
+			for(URL resourceUrl : resourceUrls){
+
+				try(InputStream is = resourceUrl.openStream()){
+					assertArrayEquals(getBytes(clazzB), readFully(is));
+				}
+			}
+		}
+
+		assertEquals(2, statistics.getEncryptedLoadCount());
+		assertEquals(1, statistics.getPassThroughLoadCount());
+		assertEquals(0, statistics.getFailureCount());
+	}
+
+	@Test
+	public void loadFromEncryptedArchiveWithoutOwnership() throws Exception {
+		JCodeModel codeModel = new JCodeModel();
+
+		JDefinedClass clazzA = codeModel._package("a")._class("A");
+		JDefinedClass clazzB = codeModel._package("b")._class("B")._extends(clazzA);
+
+		CompilerUtil.compile(codeModel);
+
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		File tmpFile = File.createTempFile("codevault", ".jar");
+
+		URL[] urls = {(tmpFile.toURI()).toURL()};
+
+		try(JarOutputStream os = new JarOutputStream(new FileOutputStream(tmpFile))){
+			os.putNextEntry(new JarEntry("a/A.class"));
+			os.write(CodeVaultUtil.encrypt(secretKey, getBytes(clazzA)));
+			os.closeEntry();
+
+			os.putNextEntry(new JarEntry("b/B.class"));
+			os.write(CodeVaultUtil.encrypt(secretKey, getBytes(clazzB)));
+			os.closeEntry();
+		}
+
+		// Archive scope, configured in code
+		KeyRegistry keyRegistry = new KeyRegistry();
+		keyRegistry.putEncodedKey("archive-key", secretKey.getEncoded());
+
+		Attributes mainAttributes = new Attributes();
+		mainAttributes.put(AttributeNames.CODEVAULT_ALGORITHM, secretKey.getAlgorithm());
+		mainAttributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "archive-key");
+
+		keyRegistry.addMainAttributes(mainAttributes);
+
+		EntryOwnership ownership = keyRegistry.getOwnership();
+
+		assertFalse(ownership.isComplete());
+
+		ClassLoadingStatistics statistics = new ClassLoadingStatistics(keyRegistry);
+
+		try(DecryptingURLClassLoader classLoader = new DecryptingURLClassLoader(urls, keyRegistry)){
+			classLoader.addClassLoadingListener(statistics);
+
+			assertSame(Object.class, classLoader.loadClass("java.lang.Object"));
+			assertSame(String.class, classLoader.loadClass("java.lang.String"));
+
+			Class<?> clazz = classLoader.loadClass("b.B");
+
+			assertSame(classLoader, clazz.getClassLoader());
+			assertSame(Object.class, (clazz.getSuperclass()).getSuperclass());
+
+			assertNotNull(clazz.getDeclaredConstructor().newInstance());
+
+			try {
+				classLoader.loadClass("c.C");
+
+				fail();
+			} catch(ClassNotFoundException cnfe){
+				// Ignored
+			}
+		}
+
+		assertEquals(2, statistics.getEncryptedLoadCount());
+		// The missing class c.C
+		assertEquals(1, statistics.getFailureCount());
+	}
+
+	@Test
+	public void transform() throws Exception {
+		JCodeModel codeModel = new JCodeModel();
+
+		JDefinedClass clazzA = codeModel._package("a")._class("A");
+		JDefinedClass clazzB = codeModel._package("b")._class("B");
+
+		CompilerUtil.compile(codeModel);
+
+		byte[] bytesA = getBytes(clazzA);
+		byte[] bytesB = getBytes(clazzB);
+
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+
+		SecretKey secretKey = keyGenerator.generateKey();
+
+		encrypt(keyRegistry, clazzA, secretKey);
+
+		byte[] encryptedBytesA = getBytes(clazzA);
+
+		DecryptingClassFileTransformer transformer = new DecryptingClassFileTransformer(keyRegistry);
+
+		assertArrayEquals(bytesA, transformer.transform(null, "a/A", null, null, encryptedBytesA));
+		assertArrayEquals(getBytes(clazzA), encryptedBytesA);
+
+		assertNull(transformer.transform(null, "b/B", null, null, bytesB));
+		assertNull(transformer.transform(null, "java/lang/Object", null, null, bytesB));
+
+		try {
+			transformer.transform(null, "a/A", null, null, bytesB);
+
+			fail();
+		} catch(IllegalClassFormatException icfe){
+			// Ignored
+		}
+	}
+
+	static
+	private byte[] readFully(InputStream is) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+		byte[] buffer = new byte[1024];
+
+		while(true){
+			int count = is.read(buffer);
+			if(count < 0){
+				break;
+			}
+
+			os.write(buffer, 0, count);
+		}
+
+		return os.toByteArray();
+	}
+
+	static
+	private byte[] getBytes(JDefinedClass clazz) throws ReflectiveOperationException {
+		JPackage _package = clazz.getPackage();
+
+		for(Iterator<JResourceFile> it = _package.propertyFiles(); it.hasNext(); ){
+			JResourceFile resourceFile = it.next();
+
+			if((resourceFile.name()).equals(clazz.name() + ".class")){
+				Field bytesField = JClassFile.class.getDeclaredField("bytes");
+				if(!bytesField.isAccessible()){
+					bytesField.setAccessible(true);
+				}
+
+				return (byte[])bytesField.get(resourceFile);
+			}
+		}
+
+		throw new IllegalArgumentException(clazz.fullName());
+	}
+
+	static
+	private void writeVault(File file, byte[] content) throws IOException {
+
+		try(JarOutputStream os = new JarOutputStream(new FileOutputStream(file))){
+			CRC32 crc = new CRC32();
+			crc.update(content);
+
+			JarEntry jarEntry = new JarEntry(Vault.DEFAULT_NAME);
+			jarEntry.setMethod(ZipEntry.STORED);
+			jarEntry.setSize(content.length);
+			jarEntry.setCompressedSize(content.length);
+			jarEntry.setCrc(crc.getValue());
+
+			os.putNextEntry(jarEntry);
+			os.write(content);
+			os.closeEntry();
+		}
+	}
+
 	static
 	private void encrypt(KeyRegistry keyRegistry, JDefinedClass clazz, SecretKey secretKey) throws GeneralSecurityException, ReflectiveOperationException {
 		JPackage _package = clazz.getPackage();
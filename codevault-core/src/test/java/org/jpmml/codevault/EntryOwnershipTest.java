@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EntryOwnershipTest {
+
+	@Test
+	public void contains(){
+		EntryOwnership ownership = EntryOwnership.build(Arrays.asList("com/example/Main.class", "com/example/Main$1.class", "data/resource.txt", "com/example/Main.class"), true);
+
+		assertTrue(ownership.isComplete());
+
+		assertTrue(ownership.containsEntry("com/example/Main.class"));
+		assertTrue(ownership.containsEntry("data/resource.txt"));
+		assertFalse(ownership.containsEntry("com/example/Main"));
+		assertFalse(ownership.containsEntry("data/"));
+
+		assertTrue(ownership.containsClass("com.example.Main"));
+		assertTrue(ownership.containsClass("com.example.Main$1"));
+		assertFalse(ownership.containsClass("com.example.Mai"));
+		assertFalse(ownership.containsClass("com.example.Main$2"));
+		assertFalse(ownership.containsClass("com.example"));
+		assertFalse(ownership.containsClass("java.lang.Object"));
+
+		for(int i = 0; i < 1000; i++){
+			assertFalse(ownership.containsClass("com.example.Other" + i));
+		}
+	}
+}
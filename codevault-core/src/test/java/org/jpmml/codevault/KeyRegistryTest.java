@@ -3,13 +3,40 @@
  */
 package org.jpmml.codevault;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class KeyRegistryTest {
 
@@ -47,4 +74,455 @@ public class KeyRegistryTest {
 		assertEquals("AES", attributes.get(AttributeNames.CODEVAULT_ALGORITHM));
 		assertEquals("entry-key", attributes.get(AttributeNames.CODEVAULT_SECRETKEY_ID));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void getKeyDescriptor(){
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		assertSame(KeyDescriptor.NONE, keyRegistry.getKeyDescriptor("a/A.class"));
+
+		Attributes mainAttributes = new Attributes();
+		mainAttributes.put(AttributeNames.CODEVAULT_ALGORITHM, "AES");
+		mainAttributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "main-key");
+
+		keyRegistry.addMainAttributes(mainAttributes);
+
+		assertEquals(KeyDescriptor.of("AES", "main-key"), keyRegistry.getKeyDescriptor("a/A.class"));
+
+		Attributes entryAttributes = new Attributes();
+		entryAttributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "entry-key");
+
+		keyRegistry.addAttributes("a/A.class", entryAttributes);
+		keyRegistry.addAttributes("b/B.class", entryAttributes);
+
+		KeyIndex keyIndex = keyRegistry.getKeyIndex();
+
+		assertSame(keyIndex, keyRegistry.getKeyIndex());
+
+		KeyDescriptor entryDescriptor = keyIndex.getKeyDescriptor("a/A.class");
+
+		assertEquals(KeyDescriptor.of("AES", "entry-key"), entryDescriptor);
+
+		assertSame(entryDescriptor, keyIndex.getKeyDescriptor("b/B.class"));
+		assertSame(keyIndex.getMainDescriptor(), keyIndex.getKeyDescriptor("c/C.class"));
+	}
+
+	@Test
+	public void getSecretKey(){
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		Attributes mainAttributes = new Attributes();
+		mainAttributes.put(AttributeNames.CODEVAULT_ALGORITHM, "AES");
+		mainAttributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "main-key");
+
+		keyRegistry.addMainAttributes(mainAttributes);
+
+		keyRegistry.putEncodedKey("main-key", new byte[16]);
+
+		SecretKeyCache secretKeyCache = keyRegistry.getSecretKeyCache();
+
+		SecretKey secretKey = keyRegistry.getSecretKey("a/A.class");
+
+		assertEquals("AES", secretKey.getAlgorithm());
+
+		assertSame(secretKey, keyRegistry.getSecretKey("b/B.class"));
+
+		assertEquals(1, secretKeyCache.getMissCount());
+		assertEquals(1, secretKeyCache.getHitCount());
+
+		keyRegistry.putEncodedKey("main-key", new byte[32]);
+
+		assertEquals(0, secretKeyCache.size());
+
+		secretKey = keyRegistry.getSecretKey("a/A.class");
+
+		assertEquals(32, (secretKey.getEncoded()).length);
+
+		assertEquals(2, secretKeyCache.getMissCount());
+	}
+
+	@Test
+	public void rotateSecretKey() throws Exception {
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		Attributes mainAttributes = new Attributes();
+		mainAttributes.put(AttributeNames.CODEVAULT_ALGORITHM, "AES");
+		mainAttributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "main-key");
+
+		keyRegistry.addMainAttributes(mainAttributes);
+
+		byte[] oldKey = new byte[16];
+		Arrays.fill(oldKey, (byte)0x01);
+
+		byte[] newKey = new byte[16];
+		Arrays.fill(newKey, (byte)0x02);
+
+		keyRegistry.putEncodedKey("main-key", oldKey);
+
+		KeyDescriptor keyDescriptor = keyRegistry.getKeyDescriptor("a/A.class");
+
+		SecretKeyCache secretKeyCache = keyRegistry.getSecretKeyCache();
+
+		// A secret key that was made from the old encoded key, but was cached after the rotation
+		SecretKey staleKey = secretKeyCache.get(keyDescriptor, oldKey, (key) -> new SecretKeySpec(oldKey, "AES"));
+
+		keyRegistry.putEncodedKey("main-key", newKey);
+
+		secretKeyCache.get(keyDescriptor, oldKey, (key) -> staleKey);
+
+		assertArrayEquals(newKey, (keyRegistry.getSecretKey("a/A.class")).getEncoded());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			Future<?> future = executor.submit(() -> {
+
+				for(int i = 0; i < 10000; i++){
+					byte[] encodedKey = (keyRegistry.getSecretKey("a/A.class")).getEncoded();
+
+					if(!Arrays.equals(oldKey, encodedKey) && !Arrays.equals(newKey, encodedKey)){
+						throw new AssertionError();
+					}
+				}
+			});
+
+			for(int i = 0; !future.isDone(); i++){
+				keyRegistry.putEncodedKey("main-key", (i % 2 == 0) ? oldKey : newKey);
+			}
+
+			future.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		keyRegistry.putEncodedKeys(Collections.singletonMap("main-key", newKey));
+
+		assertArrayEquals(newKey, (keyRegistry.getSecretKey("a/A.class")).getEncoded());
+		assertArrayEquals(newKey, (keyRegistry.getSecretKey("b/B.class")).getEncoded());
+
+		CipherCache cipherCache = new CipherCache(8);
+
+		SecretKey secretKey = keyRegistry.getSecretKey("a/A.class");
+
+		Cipher cipher = cipherCache.get(Cipher.DECRYPT_MODE, "AES", secretKey);
+
+		assertSame(cipher, cipherCache.get(Cipher.DECRYPT_MODE, "AES", secretKey));
+
+		// Ciphers of all threads are released when a secret key is replaced
+		keyRegistry.putEncodedKey("main-key", oldKey);
+
+		assertNotSame(cipher, cipherCache.get(Cipher.DECRYPT_MODE, "AES", secretKey));
+	}
+
+	@Test
+	public void deriveSecretKey() throws Exception {
+		byte[] inputKey = new byte[22];
+		Arrays.fill(inputKey, (byte)0x0B);
+
+		byte[] salt = new byte[13];
+		for(int i = 0; i < salt.length; i++){
+			salt[i] = (byte)i;
+		}
+
+		byte[] info = new byte[10];
+		for(int i = 0; i < info.length; i++){
+			info[i] = (byte)(0xF0 + i);
+		}
+
+		// RFC 5869, test case 1
+		assertEquals("3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf34007208d5b887185865", toHexString(KeyDerivation.hkdf("HmacSHA256", inputKey, salt, info, 42)));
+
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		Attributes mainAttributes = new Attributes();
+		mainAttributes.put(AttributeNames.CODEVAULT_ALGORITHM, "AES");
+		mainAttributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "master-key");
+		mainAttributes.put(AttributeNames.CODEVAULT_KEY_DERIVATION, "HKDF-SHA256/PACKAGE");
+
+		keyRegistry.addMainAttributes(mainAttributes);
+
+		byte[] masterKey = new byte[16];
+		Arrays.fill(masterKey, (byte)1);
+
+		keyRegistry.putEncodedKey("master-key", masterKey);
+
+		SecretKeyCache secretKeyCache = keyRegistry.getSecretKeyCache();
+
+		SecretKey secretKey = keyRegistry.getSecretKey("com/example/Main.class");
+
+		assertEquals("AES", secretKey.getAlgorithm());
+		assertEquals(16, (secretKey.getEncoded()).length);
+
+		assertArrayEquals((KeyDerivation.valueOf("HKDF-SHA256/PACKAGE")).derive(masterKey, "com/example/"), secretKey.getEncoded());
+		assertFalse(Arrays.equals(masterKey, secretKey.getEncoded()));
+
+		assertSame(secretKey, keyRegistry.getSecretKey("com/example/Helper.class"));
+		assertNotEquals(secretKey, keyRegistry.getSecretKey("com/example/util/Util.class"));
+
+		assertEquals(2, secretKeyCache.getMissCount());
+		assertEquals(1, secretKeyCache.getHitCount());
+
+		try {
+			keyRegistry.getSecretKey(keyRegistry.getKeyDescriptor("com/example/Main.class"));
+
+			fail();
+		} catch(IllegalArgumentException iae){
+			// Ignored
+		}
+
+		keyRegistry.putEncodedKey("master-key", new byte[16]);
+
+		assertEquals(0, secretKeyCache.size());
+	}
+
+	@Test
+	public void binaryKeyIndex() throws Exception {
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		Attributes mainAttributes = new Attributes();
+		mainAttributes.put(AttributeNames.CODEVAULT_ALGORITHM, "AES");
+		mainAttributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "main-key");
+
+		keyRegistry.addMainAttributes(mainAttributes);
+
+		Attributes entryAttributes = new Attributes();
+		entryAttributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "entry-key");
+		entryAttributes.put(AttributeNames.CODEVAULT_COMPRESSION, CompressionUtil.DEFLATE);
+		entryAttributes.put(AttributeNames.CODEVAULT_TRANSFORMATION, "AES/GCM/NoPadding");
+
+		keyRegistry.addAttributes("a/A.class", entryAttributes);
+		keyRegistry.addAttributes("b/B.class", entryAttributes);
+		keyRegistry.addAttributes("\u00e4/\u00c4.class", entryAttributes);
+
+		KeyIndex keyIndex = keyRegistry.getKeyIndex();
+
+		byte[] bytes = BinaryKeyIndex.encode(keyIndex);
+
+		BinaryKeyIndex binaryIndex = new BinaryKeyIndex(ByteBuffer.wrap(bytes));
+
+		assertEquals(3, binaryIndex.size());
+
+		assertEquals(keyIndex.getMainDescriptor(), binaryIndex.getMainDescriptor());
+
+		for(String name : Arrays.asList("a/A.class", "b/B.class", "\u00e4/\u00c4.class")){
+			assertEquals(keyIndex.getKeyDescriptor(name), binaryIndex.getEntryDescriptor(name));
+		}
+
+		assertNull(binaryIndex.getEntryDescriptor("c/C.class"));
+
+		assertEquals(Arrays.asList("a/A.class", "b/B.class", "\u00e4/\u00c4.class"), binaryIndex.getEntryNames(KeyDescriptor::isCompressed));
+
+		KeyRegistry unicodeKeyRegistry = new KeyRegistry();
+		unicodeKeyRegistry.addMainAttributes(mainAttributes);
+
+		// One, two, three and four byte UTF-8 sequences
+		List<String> unicodeNames = Arrays.asList("a/Z.class", "a/\u00c4.class", "a/\u20ac.class", "a/\uffff.class", "a/\ud83d\ude00.class", "\u00e4/");
+		for(String unicodeName : unicodeNames){
+			unicodeKeyRegistry.addAttributes(unicodeName, entryAttributes);
+		}
+
+		BinaryKeyIndex unicodeBinaryIndex = new BinaryKeyIndex(ByteBuffer.wrap(BinaryKeyIndex.encode(unicodeKeyRegistry.getKeyIndex())));
+
+		for(String unicodeName : unicodeNames){
+			assertNotNull(unicodeBinaryIndex.getEntryDescriptor(unicodeName));
+		}
+
+		assertNull(unicodeBinaryIndex.getEntryDescriptor("a/\ud83d.class"));
+		assertNull(unicodeBinaryIndex.getEntryDescriptor("a/\u00c4"));
+
+		KeyRegistry unicodeBinaryKeyRegistry = new KeyRegistry();
+		unicodeBinaryKeyRegistry.addBinaryIndex(unicodeBinaryIndex);
+
+		KeyIndex unicodeKeyIndex = unicodeBinaryKeyRegistry.getKeyIndex();
+
+		assertEquals(unicodeBinaryIndex.getEntryDescriptor("\u00e4/"), unicodeKeyIndex.getRuleDescriptor("\u00e4/\u00e4/\u00c4.class"));
+		assertNull(unicodeKeyIndex.getRuleDescriptor("\u00c4/\u00e4.class"));
+
+		File dir = Files.createTempDirectory("codevault").toFile();
+
+		File metaInfDir = new File(dir, "META-INF");
+		metaInfDir.mkdirs();
+
+		// The manifest is superseded by the binary key index
+		Files.write(new File(metaInfDir, "CODEVAULT.MF").toPath(), "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(metaInfDir, BinaryKeyIndex.NAME).toPath(), bytes);
+
+		File jarFile = new File(dir, "codevault.jar");
+
+		try(JarOutputStream os = new JarOutputStream(new FileOutputStream(jarFile))){
+			os.putNextEntry(new JarEntry("META-INF/CODEVAULT.MF"));
+			os.write("Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+			os.closeEntry();
+
+			os.putNextEntry(new JarEntry("META-INF/" + BinaryKeyIndex.NAME));
+			os.write(bytes);
+			os.closeEntry();
+		}
+
+		URL[] urls = {(dir.toURI()).toURL(), (jarFile.toURI()).toURL()};
+
+		try(URLClassLoader classLoader = new URLClassLoader(urls, null)){
+			KeyRegistry loadedKeyRegistry = new KeyRegistry();
+			loadedKeyRegistry.load(classLoader);
+
+			KeyIndex loadedKeyIndex = loadedKeyRegistry.getKeyIndex();
+
+			assertEquals(2, (loadedKeyIndex.getBinaryIndexes()).size());
+
+			assertEquals(keyIndex.getMainDescriptor(), loadedKeyIndex.getKeyDescriptor("c/C.class"));
+			assertEquals(keyIndex.getKeyDescriptor("a/A.class"), loadedKeyIndex.getKeyDescriptor("a/A.class"));
+
+			assertTrue(loadedKeyIndex.containsEntry("b/B.class"));
+
+			assertEquals(3, (loadedKeyIndex.getEntryDescriptors()).size());
+			assertEquals(3, (loadedKeyIndex.getEntryNames(KeyDescriptor::isEncrypted)).size());
+
+			assertEquals("entry-key", (loadedKeyRegistry.getAttributes("a/A.class")).get(AttributeNames.CODEVAULT_SECRETKEY_ID));
+		}
+	}
+
+	@Test
+	public void loadInParallel() throws Exception {
+		URL[] urls = new URL[8];
+
+		for(int i = 0; i < urls.length; i++){
+			Manifest manifest = new Manifest();
+
+			Attributes mainAttributes = manifest.getMainAttributes();
+			mainAttributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+			// Sources with an odd index protect themselves in full
+			if(i % 2 == 1){
+				mainAttributes.put(AttributeNames.CODEVAULT_ALGORITHM, "AES");
+				mainAttributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, "main-key-" + i);
+			}
+
+			// Later sources take precedence
+			(manifest.getEntries()).put("a/A.class", createAttributes("a-key-" + i));
+			(manifest.getEntries()).put("p" + i + "/P.class", createAttributes("p-key-" + i));
+
+			File jarFile = File.createTempFile("codevault", ".jar");
+
+			try(JarOutputStream os = new JarOutputStream(new FileOutputStream(jarFile))){
+				os.putNextEntry(new JarEntry("META-INF/CODEVAULT.MF"));
+				manifest.write(os);
+				os.closeEntry();
+
+				os.putNextEntry(new JarEntry("q" + i + "/Q.class"));
+				os.closeEntry();
+			}
+
+			urls[i] = (jarFile.toURI()).toURL();
+		}
+
+		KeyRegistry keyRegistry = new KeyRegistry();
+		KeyRegistry parallelKeyRegistry = new KeyRegistry();
+
+		List<KeyRegistry.Source> sources;
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try(URLClassLoader classLoader = new URLClassLoader(urls, null)){
+			keyRegistry.load(classLoader);
+
+			sources = parallelKeyRegistry.load(classLoader, executor);
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(urls.length, sources.size());
+
+		for(int i = 0; i < urls.length; i++){
+			KeyRegistry.Source source = sources.get(i);
+
+			assertEquals(urls[i], source.getArchiveURL());
+			assertFalse(source.isBinary());
+			assertTrue(source.getDuration() > 0L);
+		}
+
+		assertEquals(keyRegistry.getManifest(), parallelKeyRegistry.getManifest());
+
+		assertEquals("main-key-7", (parallelKeyRegistry.getAttributes("q7/Q.class")).getValue(AttributeNames.CODEVAULT_SECRETKEY_ID));
+		assertEquals("a-key-7", (parallelKeyRegistry.getAttributes("a/A.class")).getValue(AttributeNames.CODEVAULT_SECRETKEY_ID));
+
+		assertEquals(Arrays.asList(urls), parallelKeyRegistry.getOrigins("a/A.class"));
+		assertEquals(Collections.singletonList(urls[3]), parallelKeyRegistry.getOrigins("q3/Q.class"));
+		assertEquals(Collections.emptyList(), parallelKeyRegistry.getOrigins("q2/Q.class"));
+
+		EntryOwnership ownership = keyRegistry.getOwnership();
+		EntryOwnership parallelOwnership = parallelKeyRegistry.getOwnership();
+
+		assertTrue(parallelOwnership.isComplete());
+		assertEquals(ownership.size(), parallelOwnership.size());
+
+		assertTrue(parallelOwnership.containsEntry("q3/Q.class"));
+		assertFalse(parallelOwnership.containsEntry("q2/Q.class"));
+	}
+
+	@Test
+	public void getRuleDescriptor() throws Exception {
+		KeyRegistry keyRegistry = new KeyRegistry();
+
+		Attributes mainAttributes = new Attributes();
+		mainAttributes.put(AttributeNames.CODEVAULT_ALGORITHM, "AES");
+
+		keyRegistry.addMainAttributes(mainAttributes);
+
+		keyRegistry.addAttributes("com/", createAttributes("com-key"));
+		keyRegistry.addAttributes("com/example/", createAttributes("example-key"));
+		keyRegistry.addAttributes("com/example/Main.class", createAttributes("main-key"));
+
+		KeyIndex keyIndex = keyRegistry.getKeyIndex();
+
+		assertTrue(keyIndex.hasPrefixRules());
+
+		assertEquals(KeyDescriptor.of("AES", "main-key"), keyIndex.getKeyDescriptor("com/example/Main.class"));
+		assertEquals(KeyDescriptor.of("AES", "example-key"), keyIndex.getKeyDescriptor("com/example/Helper.class"));
+		assertEquals(KeyDescriptor.of("AES", "example-key"), keyIndex.getKeyDescriptor("com/example/util/Util.class"));
+		assertEquals(KeyDescriptor.of("AES", "com-key"), keyIndex.getKeyDescriptor("com/other/Other.class"));
+		assertEquals(KeyDescriptor.of("AES", "com-key"), keyIndex.getKeyDescriptor("com/Root.class"));
+
+		assertNull(keyIndex.getRuleDescriptor("org/Other.class"));
+		assertNull(keyIndex.getRuleDescriptor("Root.class"));
+
+		assertSame(keyIndex.getMainDescriptor(), keyIndex.getKeyDescriptor("org/Other.class"));
+
+		assertEquals("example-key", (keyRegistry.getAttributes("com/example/Helper.class")).get(AttributeNames.CODEVAULT_SECRETKEY_ID));
+
+		BinaryKeyIndex binaryIndex = new BinaryKeyIndex(ByteBuffer.wrap(BinaryKeyIndex.encode(keyIndex)));
+
+		assertTrue(binaryIndex.hasPrefixRules());
+
+		KeyRegistry binaryKeyRegistry = new KeyRegistry();
+		binaryKeyRegistry.addBinaryIndex(binaryIndex);
+
+		// A manifest rule takes precedence over a binary index rule of the same specificity
+		binaryKeyRegistry.addAttributes("com/other/", createAttributes("other-key"));
+
+		KeyIndex binaryKeyIndex = binaryKeyRegistry.getKeyIndex();
+
+		assertEquals(KeyDescriptor.of("AES", "main-key"), binaryKeyIndex.getKeyDescriptor("com/example/Main.class"));
+		assertEquals(KeyDescriptor.of("AES", "example-key"), binaryKeyIndex.getKeyDescriptor("com/example/util/Util.class"));
+		assertEquals(KeyDescriptor.of("AES", "other-key"), binaryKeyIndex.getKeyDescriptor("com/other/Other.class"));
+		assertEquals(KeyDescriptor.of("AES", "com-key"), binaryKeyIndex.getKeyDescriptor("com/Root.class"));
+	}
+
+	static
+	private String toHexString(byte[] bytes){
+		StringBuilder sb = new StringBuilder();
+
+		for(byte b : bytes){
+			sb.append(String.format("%02x", b & 0xFF));
+		}
+
+		return sb.toString();
+	}
+
+	static
+	private Attributes createAttributes(String secretKeyId){
+		Attributes attributes = new Attributes();
+		attributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, secretKeyId);
+
+		return attributes;
+	}
+}
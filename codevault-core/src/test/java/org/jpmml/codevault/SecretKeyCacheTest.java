@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class SecretKeyCacheTest {
+
+	@Test
+	public void evict(){
+		SecretKeyCache secretKeyCache = new SecretKeyCache(2);
+
+		KeyDescriptor keyDescriptor = KeyDescriptor.of("AES", "master-key");
+
+		SecretKey aKey = secretKeyCache.get(keyDescriptor, "a/", SecretKeyCacheTest::makeSecretKey);
+		SecretKey bKey = secretKeyCache.get(keyDescriptor, "b/", SecretKeyCacheTest::makeSecretKey);
+
+		// Gives "a/" a second chance
+		assertSame(aKey, secretKeyCache.get(keyDescriptor, "a/", SecretKeyCacheTest::makeSecretKey));
+
+		secretKeyCache.get(keyDescriptor, "c/", SecretKeyCacheTest::makeSecretKey);
+
+		assertEquals(2, secretKeyCache.size());
+
+		assertSame(aKey, secretKeyCache.get(keyDescriptor, "a/", SecretKeyCacheTest::makeSecretKey));
+		assertNotSame(bKey, secretKeyCache.get(keyDescriptor, "b/", SecretKeyCacheTest::makeSecretKey));
+
+		assertEquals(4, secretKeyCache.getMissCount());
+		assertEquals(2, secretKeyCache.getHitCount());
+	}
+
+	static
+	private SecretKey makeSecretKey(KeyDescriptor keyDescriptor, String context){
+		return new SecretKeySpec(new byte[16], keyDescriptor.getKeyAlgorithm());
+	}
+}
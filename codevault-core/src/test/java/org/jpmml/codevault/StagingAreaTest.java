@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StagingAreaTest {
+
+	@Test
+	public void put(){
+		StagingArea stagingArea = new StagingArea(100L);
+
+		assertTrue(stagingArea.reserve(10L));
+
+		// The plaintext exceeds the capacity
+		assertFalse(stagingArea.put("a.A", ByteBuffer.allocate(200), 10L));
+
+		assertEquals(0L, stagingArea.getSize());
+		assertNull(stagingArea.take("a.A"));
+
+		ByteBuffer buffer = ByteBuffer.allocate(1000);
+		((Buffer)buffer).position(100);
+		((Buffer)buffer).limit(140);
+
+		ByteBuffer slice = buffer.slice();
+
+		assertTrue(stagingArea.reserve(40L));
+		assertTrue(stagingArea.put("b.B", slice, 40L));
+
+		// Accounted by content, not by backing array
+		assertEquals(40L, stagingArea.getSize());
+
+		ByteBuffer stagedBuffer = stagingArea.take("b.B");
+
+		assertNotSame(slice, stagedBuffer);
+		assertEquals(40, stagedBuffer.remaining());
+		assertEquals(40, (stagedBuffer.array()).length);
+
+		assertEquals(0L, stagingArea.getSize());
+	}
+}
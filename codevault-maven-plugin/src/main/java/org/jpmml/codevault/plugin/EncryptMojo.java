@@ -7,16 +7,41 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
@@ -24,12 +49,21 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.model.fileset.FileSet;
 import org.apache.maven.shared.model.fileset.util.FileSetManager;
 import org.jpmml.codevault.AttributeNames;
+import org.jpmml.codevault.BinaryKeyIndex;
+import org.jpmml.codevault.ChunkedFormat;
 import org.jpmml.codevault.CodeVaultUtil;
+import org.jpmml.codevault.CompressionUtil;
+import org.jpmml.codevault.KeyDerivation;
+import org.jpmml.codevault.KeyDescriptor;
+import org.jpmml.codevault.KeyIndex;
 import org.jpmml.codevault.KeyRegistry;
+import org.jpmml.codevault.LoadOrderProfile;
+import org.jpmml.codevault.Vault;
 
 @Mojo (
 	name = "encrypt",
-	defaultPhase = LifecyclePhase.PREPARE_PACKAGE
+	defaultPhase = LifecyclePhase.PREPARE_PACKAGE,
+	threadSafe = true
 )
 public class EncryptMojo extends AbstractMojo {
 
@@ -55,6 +89,16 @@ public class EncryptMojo extends AbstractMojo {
 	)
 	private File manifestFile;
 
+	/**
+	 * If true, then a binary key index is written next to the manifest file.
+	 *
+	 * @see BinaryKeyIndex
+	 */
+	@Parameter (
+		defaultValue = "true"
+	)
+	private boolean writeKeyIndex;
+
 	@Parameter (
 		defaultValue = "CLASS"
 	)
@@ -65,6 +109,14 @@ public class EncryptMojo extends AbstractMojo {
 	)
 	private String algorithm;
 
+	/**
+	 * The cipher transformation of the default format (eg. <code>AES/GCM/NoPadding</code> or <code>AES/CTR/NoPadding</code>).
+	 * A random IV is stored in front of every encrypted file.
+	 * If unset, then the provider default transformation of the algorithm is used, without an IV.
+	 */
+	@Parameter
+	private String transformation;
+
 	@Parameter (
 		defaultValue = "${project.groupId}:${project.artifactId}:${project.version}",
 		required = true
@@ -76,6 +128,57 @@ public class EncryptMojo extends AbstractMojo {
 	)
 	private File secretKeyFile;
 
+	/**
+	 * The key derivation scheme (eg. <code>HKDF-SHA256/PACKAGE</code> or <code>HKDF-SHA256/ENTRY</code>).
+	 * If set, then the secret key is a master key, and every package or entry is encrypted using a key that is derived from it.
+	 *
+	 * @see KeyDerivation
+	 */
+	@Parameter
+	private String keyDerivation;
+
+	@Parameter (
+		defaultValue = "DEFAULT"
+	)
+	private Format format;
+
+	/**
+	 * The chunk size of chunked containers and packed vaults.
+	 * Defaults to 65536 bytes for the former, and to 4096 bytes for the latter.
+	 */
+	@Parameter
+	private Integer chunkSize;
+
+	@Parameter (
+		defaultValue = Vault.DEFAULT_NAME
+	)
+	private String vaultName;
+
+	/**
+	 * A load order profile of a representative run.
+	 * If set, then the profiled entries are stored first in the vault, in load order, and marked as hot.
+	 * The class loader decrypts hot entries in a single sequential pass when it is warmed up, and stages them ahead of other entries.
+	 *
+	 * @see LoadOrderProfile
+	 */
+	@Parameter
+	private File profileFile;
+
+	@Parameter (
+		defaultValue = "NONE"
+	)
+	private Compression compression;
+
+	@Parameter (
+		defaultValue = "1"
+	)
+	private int threads;
+
+	@Parameter (
+		defaultValue = "${project.build.directory}/codevault/encrypt.state"
+	)
+	private File stateFile;
+
 
 	@Override
 	public void execute() throws MojoExecutionException {
@@ -97,10 +200,74 @@ public class EncryptMojo extends AbstractMojo {
 			fileSet.setExcludes(Arrays.asList(excludes));
 		}
 
+		// The outputs of this goal must never be encrypted
+		fileSet.addExclude("META-INF/CODEVAULT.*");
+
 		Scope scope = getScope();
 		String algorithm = getAlgorithm();
+		String transformation = getTransformation();
 		String secretKeyId = getSecretKeyId();
 		File secretKeyFile = getSecretKeyFile();
+		KeyDerivation keyDerivation;
+
+		try {
+			keyDerivation = (getKeyDerivation() != null ? KeyDerivation.valueOf(getKeyDerivation()) : null);
+		} catch(IllegalArgumentException iae){
+			throw new MojoExecutionException("Invalid key derivation: " + getKeyDerivation(), iae);
+		}
+
+		Format format = getFormat();
+		Compression compression = getCompression();
+		int chunkSize;
+
+		if(getChunkSize() != null){
+			chunkSize = getChunkSize();
+		} else
+
+		{
+			switch(scope){
+				case VAULT:
+					chunkSize = Vault.DEFAULT_CHUNK_SIZE;
+					break;
+				default:
+					chunkSize = ChunkedFormat.DEFAULT_CHUNK_SIZE;
+					break;
+			}
+		} // End if
+
+		if(chunkSize < 1){
+			throw new MojoExecutionException("Invalid chunk size: " + chunkSize);
+		} // End if
+
+		if(transformation != null){
+
+			if(format != Format.DEFAULT || scope == Scope.VAULT){
+				throw new MojoExecutionException("Cipher transformation is only applicable to the default format");
+			}
+
+			KeyDescriptor keyDescriptor = (KeyDescriptor.NONE).withTransformation(transformation);
+
+			if(!(algorithm).equalsIgnoreCase(keyDescriptor.getKeyAlgorithm())){
+				throw new MojoExecutionException("Cipher transformation " + transformation + " does not match algorithm " + algorithm);
+			}
+		}
+
+		File profileFile = getProfileFile();
+
+		LoadOrderProfile profile = null;
+
+		if(profileFile != null){
+
+			if(scope != Scope.VAULT){
+				throw new MojoExecutionException("Load order profile is only applicable to the vault scope");
+			}
+
+			try {
+				profile = LoadOrderProfile.read(profileFile);
+			} catch(IOException ioe){
+				throw new MojoExecutionException("Error reading profile file", ioe);
+			}
+		}
 
 		byte[] secretKeyContent;
 
@@ -112,53 +279,378 @@ public class EncryptMojo extends AbstractMojo {
 
 		SecretKey secretKey = new SecretKeySpec(secretKeyContent, algorithm);
 
+		Function<String, SecretKey> secretKeyFunction;
+
+		if(keyDerivation != null){
+			Map<String, SecretKey> derivedSecretKeys = new ConcurrentHashMap<>();
+
+			secretKeyFunction = (name) -> derivedSecretKeys.computeIfAbsent(keyDerivation.getContext(name), context -> new SecretKeySpec(keyDerivation.derive(secretKeyContent, context), algorithm));
+		} else
+
+		{
+			secretKeyFunction = (name) -> secretKey;
+		}
+
 		KeyRegistry keyRegistry = new KeyRegistry();
 
 		Attributes attributes = new Attributes();
 		attributes.put(AttributeNames.CODEVAULT_ALGORITHM, algorithm);
 		attributes.put(AttributeNames.CODEVAULT_SECRETKEY_ID, secretKeyId);
 
+		switch(format){
+			case DEFAULT:
+				break;
+			case CHUNKED:
+				attributes.put(AttributeNames.CODEVAULT_FORMAT, ChunkedFormat.FORMAT);
+				break;
+		}
+
+		String compressionName = compression.getName();
+		if(compressionName != null){
+			attributes.put(AttributeNames.CODEVAULT_COMPRESSION, compressionName);
+		} // End if
+
+		if(transformation != null){
+			attributes.put(AttributeNames.CODEVAULT_TRANSFORMATION, transformation);
+		} // End if
+
+		if(keyDerivation != null){
+			attributes.put(AttributeNames.CODEVAULT_KEY_DERIVATION, keyDerivation.toString());
+		}
+
 		switch(scope){
 			case ARCHIVE:
 				keyRegistry.addMainAttributes(attributes);
 				break;
+			case PACKAGE:
+				break;
 			case CLASS:
 				break;
+			case VAULT:
+				break;
 		}
 
 		String[] includedFiles = fileSetManager.getIncludedFiles(fileSet);
+
+		// The order of manifest entries must not depend on the order of directory listing
+		Arrays.sort(includedFiles);
+
+		if(scope == Scope.VAULT){
+			String vaultName = getVaultName();
+
+			Attributes vaultAttributes = new Attributes(attributes);
+			vaultAttributes.put(AttributeNames.CODEVAULT_FORMAT, Vault.FORMAT);
+
+			packVault(workDirectory, includedFiles, vaultName, secretKeyFunction.apply(vaultName), chunkSize, compressionName, profile);
+
+			keyRegistry.addAttributes(vaultName, vaultAttributes);
+
+			writeManifest(manifestFile, keyRegistry);
+
+			return;
+		}
+
+		File stateFile = getStateFile();
+
+		String settings = "";
+
+		switch(format){
+			case DEFAULT:
+				break;
+			case CHUNKED:
+				settings += (format.name() + ":" + chunkSize);
+				break;
+		}
+
+		if(compressionName != null){
+			settings += (";" + compressionName);
+		} // End if
+
+		if(transformation != null){
+			settings += (";" + transformation);
+		} // End if
+
+		if(keyDerivation != null){
+			settings += (";" + keyDerivation);
+		}
+
+		// Keep fingerprints of default settings stable
+		String fingerprint = (settings.isEmpty() ?
+			EncryptionState.digest(toBytes(scope.name()), toBytes(algorithm), toBytes(secretKeyId), secretKeyContent) :
+			EncryptionState.digest(toBytes(scope.name()), toBytes(algorithm), toBytes(secretKeyId), toBytes(settings), secretKeyContent)
+		);
+
+		EncryptionState prevState;
+
+		try {
+			prevState = EncryptionState.read(stateFile);
+		} catch(IOException ioe){
+			throw new MojoExecutionException("Error reading state file", ioe);
+		}
+
+		if(prevState != null && !(fingerprint).equals(prevState.getFingerprint())){
+			checkUnencrypted(workDirectory, includedFiles, prevState);
+
+			prevState = null;
+		}
+
+		EncryptionState state = new EncryptionState(fingerprint);
+
+		List<Callable<FileResult>> tasks = new ArrayList<>(includedFiles.length);
+
 		for(String includedFile : includedFiles){
-			File workFile = new File(workDirectory, includedFile);
+			EncryptionState.Entry prevEntry = (prevState != null ? prevState.getEntry(includedFile) : null);
+
+			// Carried over until the work file has been processed, because an unprocessed work file may still be encrypted
+			if(prevEntry != null){
+				state.putEntry(prevEntry);
+			}
+
+			SecretKey fileSecretKey = secretKeyFunction.apply(includedFile.replace(File.separatorChar, '/'));
 
-			byte[] content;
+			tasks.add(() -> {
+				FileResult result = encryptFile(workDirectory, includedFile, prevEntry, fileSecretKey, format, transformation, chunkSize, compressionName);
 
+				state.putEntry(result.getEntry());
+
+				return result;
+			});
+		}
+
+		List<FileResult> results;
+
+		try {
+			results = invokeAll(tasks);
+		} finally {
+			// Records the work files that have been encrypted so far, even if some other work file has failed
 			try {
-				content = FileUtil.readFile(workFile);
+				state.write(stateFile);
 			} catch(IOException ioe){
-				throw new MojoExecutionException("Error reading work file", ioe);
+				throw new MojoExecutionException("Error writing state file", ioe);
 			}
+		}
 
-			try {
-				content = CodeVaultUtil.encrypt(secretKey, content);
-			} catch(GeneralSecurityException gse){
-				throw new MojoExecutionException("Error encrypting", gse);
+		int encryptedCount = 0;
+
+		for(FileResult result : results){
+
+			if(result.isEncrypted()){
+				encryptedCount++;
 			}
+		}
 
-			try {
-				FileUtil.writeFile(workFile, content);
-			} catch(IOException ioe){
-				throw new MojoExecutionException("Error writing work file", ioe);
+		Log log = getLog();
+
+		log.info("Encrypted " + encryptedCount + " file(s), skipped " + (results.size() - encryptedCount) + " unchanged encrypted file(s)");
+
+		if(scope == Scope.PACKAGE){
+			List<String> names = selectPackageRules(workDirectory, includedFiles);
+
+			for(String name : names){
+				keyRegistry.addAttributes(name, attributes);
 			}
 
+			log.info("Protected " + includedFiles.length + " file(s) using " + names.size() + " rule(s)");
+		}
+
+		for(String includedFile : includedFiles){
+
 			switch(scope){
 				case ARCHIVE:
 					break;
 				case CLASS:
 					keyRegistry.addAttributes(includedFile, attributes);
 					break;
+				default:
+					break;
 			}
 		}
 
+		writeManifest(manifestFile, keyRegistry);
+	}
+
+	/**
+	 * <p>
+	 * Packs work files into a vault, and deletes them.
+	 * </p>
+	 *
+	 * An existing vault is updated in place: work files replace same-named entries, and all other entries are retained.
+	 *
+	 * Entries are stored in name order. If a load order profile is given, then profiled entries are stored first, in load order, and are marked as hot.
+	 */
+	private void packVault(File workDirectory, String[] includedFiles, String vaultName, SecretKey secretKey, int chunkSize, String compressionName, LoadOrderProfile profile) throws MojoExecutionException {
+		Log log = getLog();
+
+		File vaultFile = new File(workDirectory, vaultName);
+
+		Map<String, Integer> ranks = new HashMap<>();
+
+		if(profile != null){
+			List<String> names = profile.getEntryNames();
+
+			for(String name : names){
+				ranks.put(name, ranks.size());
+			}
+		}
+
+		Comparator<String> comparator = Comparator.<String, Integer>comparing(name -> ranks.getOrDefault(name, Integer.MAX_VALUE))
+			.thenComparing(Comparator.naturalOrder());
+
+		SortedMap<String, byte[]> entries = new TreeMap<>(comparator);
+
+		List<String> prevNames = null;
+		int prevHotCount = 0;
+
+		if(vaultFile.exists()){
+
+			try {
+				Vault vault = new Vault(secretKey, ByteBuffer.wrap(FileUtil.readFile(vaultFile)), compressionName);
+
+				prevNames = vault.list();
+				prevHotCount = vault.getHotCount();
+
+				List<String> names = vault.list();
+				for(String name : names){
+					ByteBuffer buffer = vault.read(name);
+
+					byte[] content = new byte[buffer.remaining()];
+					buffer.get(content);
+
+					entries.put(name, content);
+				}
+			} catch(IOException ioe){
+				throw new MojoExecutionException("Error reading vault file", ioe);
+			} catch(GeneralSecurityException gse){
+				throw new MojoExecutionException("Vault file " + vaultName + " has been encrypted using different settings. Perform a clean build", gse);
+			}
+		}
+
+		List<File> workFiles = new ArrayList<>();
+
+		for(String includedFile : includedFiles){
+			String name = includedFile.replace(File.separatorChar, '/');
+
+			// The vault and the manifest must not be packed into the vault
+			if((name).equals(vaultName) || name.startsWith("META-INF/CODEVAULT.")){
+				continue;
+			}
+
+			File workFile = new File(workDirectory, includedFile);
+
+			try {
+				entries.put(name, FileUtil.readFile(workFile));
+			} catch(IOException ioe){
+				throw new MojoExecutionException("Error reading work file", ioe);
+			}
+
+			workFiles.add(workFile);
+		}
+
+		int hotCount = (int)(entries.keySet()).stream()
+			.filter(ranks::containsKey)
+			.count();
+
+		boolean layoutChanged = (prevNames == null || !(prevNames).equals(new ArrayList<>(entries.keySet())) || prevHotCount != hotCount);
+
+		if(workFiles.isEmpty() && !layoutChanged){
+			log.info("Vault " + vaultName + " is up to date (" + entries.size() + " entries)");
+
+			return;
+		}
+
+		byte[] content;
+
+		try {
+			content = Vault.encrypt(secretKey, entries, chunkSize, compressionName, hotCount);
+		} catch(GeneralSecurityException gse){
+			throw new MojoExecutionException("Error encrypting", gse);
+		}
+
+		FileUtil.ensureParentDirectory(vaultFile);
+
+		try {
+			FileUtil.writeFile(vaultFile, content);
+		} catch(IOException ioe){
+			throw new MojoExecutionException("Error writing vault file", ioe);
+		}
+
+		for(File workFile : workFiles){
+
+			if(!workFile.delete()){
+				throw new MojoExecutionException("Error deleting work file " + workFile);
+			}
+		}
+
+		log.info("Packed " + workFiles.size() + " file(s) into vault " + vaultName + " (" + entries.size() + " entries, " + hotCount + " hot)");
+	}
+
+	/**
+	 * <p>
+	 * Covers work files with as few rules as possible.
+	 * </p>
+	 *
+	 * A prefix rule applies to all files in a directory and its subdirectories.
+	 * A directory qualifies for a prefix rule if all the files under it are work files.
+	 * Work files that are not under any qualifying directory get entry rules.
+	 *
+	 * @return A sorted list of rule names.
+	 */
+	static
+	private List<String> selectPackageRules(File workDirectory, String[] includedFiles) throws MojoExecutionException {
+		Set<String> workFiles = new HashSet<>();
+
+		for(String includedFile : includedFiles){
+			workFiles.add(includedFile.replace(File.separatorChar, '/'));
+		}
+
+		List<String> files;
+
+		try(Stream<Path> paths = Files.walk(workDirectory.toPath())){
+			files = paths
+				.filter(Files::isRegularFile)
+				.map(path -> ((workDirectory.toPath()).relativize(path)).toString().replace(File.separatorChar, '/'))
+				.collect(Collectors.toList());
+		} catch(IOException ioe){
+			throw new MojoExecutionException("Error listing work directory", ioe);
+		}
+
+		// Directories that contain at least one file that is not a work file
+		Set<String> mixedDirectories = new HashSet<>();
+
+		for(String file : files){
+
+			if(workFiles.contains(file) || file.startsWith("META-INF/CODEVAULT.")){
+				continue;
+			}
+
+			for(int end = file.indexOf('/'); end > -1; end = file.indexOf('/', end + 1)){
+				mixedDirectories.add(file.substring(0, end + 1));
+			}
+		}
+
+		Set<String> result = new TreeSet<>();
+
+		for(String workFile : workFiles){
+			String rule = workFile;
+
+			// Select the outermost qualifying directory
+			for(int end = workFile.indexOf('/'); end > -1; end = workFile.indexOf('/', end + 1)){
+				String directory = workFile.substring(0, end + 1);
+
+				if(!mixedDirectories.contains(directory)){
+					rule = directory;
+
+					break;
+				}
+			}
+
+			result.add(rule);
+		}
+
+		return new ArrayList<>(result);
+	}
+
+	private void writeManifest(File manifestFile, KeyRegistry keyRegistry) throws MojoExecutionException {
 		Manifest manifest = keyRegistry.getManifest();
 
 		FileUtil.ensureParentDirectory(manifestFile);
@@ -174,6 +666,146 @@ public class EncryptMojo extends AbstractMojo {
 		} catch(IOException ioe){
 			throw new MojoExecutionException("Error writing manifest file", ioe);
 		}
+
+		File keyIndexFile = new File(manifestFile.getParentFile(), BinaryKeyIndex.NAME);
+
+		if(getWriteKeyIndex()){
+
+			try {
+				FileUtil.writeFile(keyIndexFile, BinaryKeyIndex.encode(keyRegistry.compile()));
+			} catch(IOException ioe){
+				throw new MojoExecutionException("Error writing key index file", ioe);
+			}
+		} else
+
+		// A stale key index would take precedence over the manifest file
+		{
+			if(keyIndexFile.exists() && !keyIndexFile.delete()){
+				throw new MojoExecutionException("Error deleting key index file " + keyIndexFile);
+			}
+		}
+	}
+
+	private <V> List<V> invokeAll(List<Callable<V>> tasks) throws MojoExecutionException {
+		int threads = getThreads();
+
+		if(threads < 1){
+			throw new MojoExecutionException("Invalid number of threads: " + threads);
+		}
+
+		List<V> result = new ArrayList<>(tasks.size());
+
+		if(threads == 1){
+
+			for(Callable<V> task : tasks){
+
+				try {
+					result.add(task.call());
+				} catch(MojoExecutionException | RuntimeException e){
+					throw e;
+				} catch(Exception e){
+					throw new MojoExecutionException("Error encrypting", e);
+				}
+			}
+
+			return result;
+		}
+
+		ExecutorService executorService = Executors.newFixedThreadPool(threads);
+
+		List<Future<V>> futures = new ArrayList<>(tasks.size());
+
+		try {
+
+			for(Callable<V> task : tasks){
+				futures.add(executorService.submit(task));
+			}
+
+			for(Future<V> future : futures){
+
+				try {
+					result.add(future.get());
+				} catch(ExecutionException ee){
+					Throwable cause = ee.getCause();
+
+					if(cause instanceof MojoExecutionException){
+						throw (MojoExecutionException)cause;
+					}
+
+					throw new MojoExecutionException("Error encrypting", cause);
+				} catch(InterruptedException ie){
+					Thread.currentThread().interrupt();
+
+					throw new MojoExecutionException("Interrupted", ie);
+				}
+			}
+		} finally {
+
+			// Tasks that have been started are not interrupted, so that every work file is either fully processed or not processed at all
+			for(Future<V> future : futures){
+				future.cancel(false);
+			}
+
+			executorService.shutdown();
+
+			try {
+				while(!executorService.awaitTermination(1, TimeUnit.SECONDS)){
+					// Ignored
+				}
+			} catch(InterruptedException ie){
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		return result;
+	}
+
+	private FileResult encryptFile(File workDirectory, String includedFile, EncryptionState.Entry prevEntry, SecretKey secretKey, Format format, String transformation, int chunkSize, String compressionName) throws MojoExecutionException {
+		File workFile = new File(workDirectory, includedFile);
+
+		byte[] content;
+
+		try {
+			content = FileUtil.readFile(workFile);
+		} catch(IOException ioe){
+			throw new MojoExecutionException("Error reading work file", ioe);
+		}
+
+		String digest = EncryptionState.digest(content);
+
+		// The work file has not changed since it was encrypted
+		if(prevEntry != null && (digest).equals(prevEntry.getCiphertextDigest())){
+			return new FileResult(prevEntry, false);
+		}
+
+		try {
+			if(compressionName != null){
+				content = CompressionUtil.compress(compressionName, content);
+			}
+
+			switch(format){
+				case DEFAULT:
+					content = (transformation != null ? CodeVaultUtil.encrypt(transformation, secretKey, content) : CodeVaultUtil.encrypt(secretKey, content));
+					break;
+				case CHUNKED:
+					content = ChunkedFormat.encrypt(secretKey, content, chunkSize);
+					break;
+				default:
+					throw new IllegalArgumentException();
+			}
+		} catch(GeneralSecurityException gse){
+			throw new MojoExecutionException("Error encrypting", gse);
+		}
+
+		try {
+			FileUtil.writeFile(workFile, content);
+		} catch(IOException ioe){
+			throw new MojoExecutionException("Error writing work file", ioe);
+		}
+
+		EncryptionState.Entry entry = new EncryptionState.Entry(includedFile, digest, EncryptionState.digest(content));
+
+		return new FileResult(entry, true);
 	}
 
 	public MavenProject getProject(){
@@ -216,6 +848,14 @@ public class EncryptMojo extends AbstractMojo {
 		this.manifestFile = manifestFile;
 	}
 
+	public boolean getWriteKeyIndex(){
+		return this.writeKeyIndex;
+	}
+
+	public void setWriteKeyIndex(boolean writeKeyIndex){
+		this.writeKeyIndex = writeKeyIndex;
+	}
+
 	public Scope getScope(){
 		return this.scope;
 	}
@@ -232,6 +872,14 @@ public class EncryptMojo extends AbstractMojo {
 		this.algorithm = algorithm;
 	}
 
+	public String getTransformation(){
+		return this.transformation;
+	}
+
+	public void setTransformation(String transformation){
+		this.transformation = transformation;
+	}
+
 	public String getSecretKeyId(){
 		return this.secretKeyId;
 	}
@@ -248,10 +896,173 @@ public class EncryptMojo extends AbstractMojo {
 		this.secretKeyFile = secretKeyFile;
 	}
 
+	public String getKeyDerivation(){
+		return this.keyDerivation;
+	}
+
+	public void setKeyDerivation(String keyDerivation){
+		this.keyDerivation = keyDerivation;
+	}
+
+	public Format getFormat(){
+		return this.format;
+	}
+
+	public void setFormat(Format format){
+		this.format = format;
+	}
+
+	public Integer getChunkSize(){
+		return this.chunkSize;
+	}
+
+	public void setChunkSize(Integer chunkSize){
+		this.chunkSize = chunkSize;
+	}
+
+	public File getProfileFile(){
+		return this.profileFile;
+	}
+
+	public void setProfileFile(File profileFile){
+		this.profileFile = profileFile;
+	}
+
+	public Compression getCompression(){
+		return this.compression;
+	}
+
+	public void setCompression(Compression compression){
+		this.compression = compression;
+	}
+
+	public String getVaultName(){
+		return this.vaultName;
+	}
+
+	public void setVaultName(String vaultName){
+		this.vaultName = vaultName;
+	}
+
+	public int getThreads(){
+		return this.threads;
+	}
+
+	public void setThreads(int threads){
+		this.threads = threads;
+	}
+
+	public File getStateFile(){
+		return this.stateFile;
+	}
+
+	public void setStateFile(File stateFile){
+		this.stateFile = stateFile;
+	}
+
+	static
+	private void checkUnencrypted(File workDirectory, String[] includedFiles, EncryptionState state) throws MojoExecutionException {
+
+		for(String includedFile : includedFiles){
+			EncryptionState.Entry entry = state.getEntry(includedFile);
+
+			if(entry == null){
+				continue;
+			}
+
+			String digest;
+
+			try {
+				digest = EncryptionState.digest(FileUtil.readFile(new File(workDirectory, includedFile)));
+			} catch(IOException ioe){
+				throw new MojoExecutionException("Error reading work file", ioe);
+			}
+
+			if((digest).equals(entry.getCiphertextDigest())){
+				throw new MojoExecutionException("Work file " + includedFile + " has been encrypted using different settings. Perform a clean build");
+			}
+		}
+	}
+
+	static
+	private byte[] toBytes(String string){
+		return string.getBytes(StandardCharsets.UTF_8);
+	}
+
+	static
+	private class FileResult {
+
+		private EncryptionState.Entry entry = null;
+
+		private boolean encrypted = false;
+
+
+		private FileResult(EncryptionState.Entry entry, boolean encrypted){
+			this.entry = entry;
+			this.encrypted = encrypted;
+		}
+
+		public EncryptionState.Entry getEntry(){
+			return this.entry;
+		}
+
+		public boolean isEncrypted(){
+			return this.encrypted;
+		}
+	}
+
 	static
 	public enum Scope {
 		ARCHIVE,
+		/**
+		 * Protects work files using prefix rules for whole packages where possible.
+		 *
+		 * @see KeyIndex#getRuleDescriptor(String)
+		 */
+		PACKAGE,
 		CLASS,
+		/**
+		 * Packs all selected files into a single vault entry.
+		 *
+		 * @see Vault
+		 */
+		VAULT,
+		;
+	}
+
+	static
+	public enum Format {
+		/**
+		 * A single cipher block sequence.
+		 */
+		DEFAULT,
+		/**
+		 * A sequence of independently authenticated segments.
+		 *
+		 * @see ChunkedFormat
+		 */
+		CHUNKED,
+		;
+	}
+
+	static
+	public enum Compression {
+		NONE(null),
+		DEFLATE(CompressionUtil.DEFLATE),
 		;
+
+		private String name = null;
+
+
+		private Compression(String name){
+			this.name = name;
+		}
+
+		/**
+		 * @return The value of the compression attribute, or <code>null</code>.
+		 */
+		public String getName(){
+			return this.name;
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2021 Villu Ruusmann
+ */
+package org.jpmml.codevault.plugin;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * <p>
+ * The record of work files that have been encrypted by a previous execution of the encrypt goal.
+ * </p>
+ *
+ * The fingerprint identifies the encryption settings.
+ * Recorded work files are only valid if the fingerprint is unchanged.
+ *
+ * Entries may be put concurrently.
+ */
+public class EncryptionState {
+
+	private String fingerprint = null;
+
+	private Map<String, Entry> entries = new ConcurrentSkipListMap<>();
+
+
+	public EncryptionState(String fingerprint){
+		this.fingerprint = fingerprint;
+	}
+
+	public String getFingerprint(){
+		return this.fingerprint;
+	}
+
+	public Entry getEntry(String path){
+		return this.entries.get(path);
+	}
+
+	public Collection<Entry> getEntries(){
+		return this.entries.values();
+	}
+
+	public void putEntry(Entry entry){
+		this.entries.put(entry.getPath(), entry);
+	}
+
+	/**
+	 * <p>
+	 * Writes the state to a temporary file, and then moves it into place.
+	 * </p>
+	 *
+	 * An interrupted write leaves the previous state file intact.
+	 */
+	public void write(File file) throws IOException {
+		File parent = FileUtil.ensureParentDirectory(file);
+
+		Path tmpPath = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+
+		try {
+			write(tmpPath);
+
+			Files.move(tmpPath, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmpPath);
+		}
+	}
+
+	private void write(Path path) throws IOException {
+
+		try(BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)){
+			writer.write("# JPMML-CodeVault encryption state");
+			writer.newLine();
+
+			writer.write(FINGERPRINT + " " + this.fingerprint);
+			writer.newLine();
+
+			Collection<Entry> entries = getEntries();
+			for(Entry entry : entries){
+				writer.write(entry.getPlaintextDigest() + " " + entry.getCiphertextDigest() + " " + entry.getPath());
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * @return The state, or <code>null</code> if the file does not exist.
+	 */
+	static
+	public EncryptionState read(File file) throws IOException {
+
+		if(!file.isFile()){
+			return null;
+		}
+
+		EncryptionState result = null;
+
+		try(BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)){
+
+			while(true){
+				String line = reader.readLine();
+				if(line == null){
+					break;
+				} // End if
+
+				if(line.isEmpty() || line.startsWith("#")){
+					continue;
+				} // End if
+
+				if(line.startsWith(FINGERPRINT + " ")){
+					result = new EncryptionState(line.substring(FINGERPRINT.length() + 1));
+
+					continue;
+				} // End if
+
+				if(result == null){
+					throw new IOException("Missing fingerprint");
+				}
+
+				String[] parts = line.split(" ", 3);
+				if(parts.length != 3){
+					throw new IOException("Malformed line: " + line);
+				}
+
+				result.putEntry(new Entry(parts[2], parts[0], parts[1]));
+			}
+		}
+
+		return result;
+	}
+
+	static
+	public String digest(byte[]... contents){
+		MessageDigest messageDigest;
+
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException nsae){
+			throw new IllegalStateException(nsae);
+		}
+
+		for(byte[] content : contents){
+			messageDigest.update(content);
+		}
+
+		byte[] digest = messageDigest.digest();
+
+		StringBuilder sb = new StringBuilder(2 * digest.length);
+
+		for(byte b : digest){
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+
+		return sb.toString();
+	}
+
+	static
+	public class Entry {
+
+		private String path = null;
+
+		private String plaintextDigest = null;
+
+		private String ciphertextDigest = null;
+
+
+		public Entry(String path, String plaintextDigest, String ciphertextDigest){
+			this.path = Objects.requireNonNull(path);
+			this.plaintextDigest = Objects.requireNonNull(plaintextDigest);
+			this.ciphertextDigest = Objects.requireNonNull(ciphertextDigest);
+		}
+
+		public String getPath(){
+			return this.path;
+		}
+
+		public String getPlaintextDigest(){
+			return this.plaintextDigest;
+		}
+
+		public String getCiphertextDigest(){
+			return this.ciphertextDigest;
+		}
+	}
+
+	private static final String FINGERPRINT = "fingerprint";
+}